@@ -0,0 +1,56 @@
+package kz.hustle.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the CityDTO and RegionDTO lists returned by the listing endpoints.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DtoSerializationBenchmark {
+
+    @Param({"100", "10000"})
+    private int size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ObjectWriter cityListWriter;
+    private List<CityDTO> cities;
+    private List<RegionDTO> regions;
+
+    @Setup
+    public void setUp() {
+        cities = new ArrayList<>(size);
+        regions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            cities.add(new CityDTO((long) i, "City " + i, "Region " + i % 1000, "Country " + i % 50));
+            regions.add(new RegionDTO((long) i, "Region " + i, "Country " + i % 50));
+        }
+        cityListWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, CityDTO.class));
+    }
+
+    @Benchmark
+    public byte[] serializeCities() throws IOException {
+        return objectMapper.writeValueAsBytes(cities);
+    }
+
+    @Benchmark
+    public byte[] serializeCitiesWithTypedWriter() throws IOException {
+        return cityListWriter.writeValueAsBytes(cities);
+    }
+
+    @Benchmark
+    public byte[] serializeRegions() throws IOException {
+        return objectMapper.writeValueAsBytes(regions);
+    }
+}
@@ -0,0 +1,134 @@
+package kz.hustle.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserting regions and cities with IDENTITY ids (the previous mapping) and with pooled sequence ids (the current one),
+ * into an in-memory H2 database with JDBC batching enabled. With IDENTITY, Hibernate executes every insert immediately
+ * to read the generated key, so batching has no effect.
+ * Run with: gradle jmh -PjmhIncludes=IdGenerationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IdGenerationBenchmark {
+
+    @Entity(name = "IdentityRegion")
+    @Table(name = "identity_region")
+    public static class IdentityRegion {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        Long id;
+        String name;
+    }
+
+    @Entity(name = "IdentityCity")
+    @Table(name = "identity_city")
+    public static class IdentityCity {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        Long id;
+        String name;
+        @ManyToOne(fetch = FetchType.LAZY)
+        IdentityRegion region;
+    }
+
+    @Entity(name = "SequenceRegion")
+    @Table(name = "sequence_region")
+    public static class SequenceRegion {
+        @Id
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequence_region_seq")
+        @SequenceGenerator(name = "sequence_region_seq", sequenceName = "sequence_region_seq", allocationSize = 50)
+        Long id;
+        String name;
+    }
+
+    @Entity(name = "SequenceCity")
+    @Table(name = "sequence_city")
+    public static class SequenceCity {
+        @Id
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequence_city_seq")
+        @SequenceGenerator(name = "sequence_city_seq", sequenceName = "sequence_city_seq", allocationSize = 50)
+        Long id;
+        String name;
+        @ManyToOne(fetch = FetchType.LAZY)
+        SequenceRegion region;
+    }
+
+    @Param({"IDENTITY", "SEQUENCE"})
+    private String idGeneration;
+
+    //Number of regions per operation, each with citiesPerRegion cities
+    @Param({"100"})
+    private int regions;
+
+    @Param({"100"})
+    private int citiesPerRegion;
+
+    private SessionFactory sessionFactory;
+
+    @Setup
+    public void setUp() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(IdentityRegion.class)
+                .addAnnotatedClass(IdentityCity.class)
+                .addAnnotatedClass(SequenceRegion.class)
+                .addAnnotatedClass(SequenceCity.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:id-benchmark;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("hibernate.jdbc.batch_size", "50")
+                .setProperty("hibernate.order_inserts", "true")
+                .buildSessionFactory();
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public void insertRegionsAndCities() {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            for (int r = 0; r < regions; r++) {
+                if (idGeneration.equals("IDENTITY")) {
+                    IdentityRegion region = new IdentityRegion();
+                    region.name = "Region " + r;
+                    session.persist(region);
+                    for (int c = 0; c < citiesPerRegion; c++) {
+                        IdentityCity city = new IdentityCity();
+                        city.name = "City " + c;
+                        city.region = region;
+                        session.persist(city);
+                    }
+                } else {
+                    SequenceRegion region = new SequenceRegion();
+                    region.name = "Region " + r;
+                    session.persist(region);
+                    for (int c = 0; c < citiesPerRegion; c++) {
+                        SequenceCity city = new SequenceCity();
+                        city.name = "City " + c;
+                        city.region = region;
+                        session.persist(city);
+                    }
+                }
+                //Same chunked write as the city import
+                if ((r + 1) % 5 == 0) {
+                    session.flush();
+                    session.clear();
+                }
+            }
+            session.getTransaction().commit();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package kz.hustle.service;
+
+import kz.hustle.dto.CityDTO;
+import kz.hustle.entity.City;
+import kz.hustle.entity.Country;
+import kz.hustle.entity.Region;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping of City entities to CityDTO by CityService.createDTO, for a single city and for a list.
+ * City listings are mapped by projection queries, this is the cost they avoid.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CityDtoMappingBenchmark {
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    private List<City> cities;
+
+    @Setup
+    public void setUp() {
+        List<Country> countries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            countries.add(new Country((long) i, "Country " + i));
+        }
+        List<Region> regions = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Region region = new Region(countries.get(i % countries.size()), "Region " + i);
+            region.setId((long) i);
+            regions.add(region);
+        }
+        cities = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            City city = new City("City " + i, regions.get(i % regions.size()));
+            city.setId((long) i);
+            cities.add(city);
+        }
+    }
+
+    @Benchmark
+    public CityDTO createDTO() {
+        return CityService.createDTO(cities.get(size / 2));
+    }
+
+    @Benchmark
+    public List<CityDTO> createDTOList() {
+        return cities.stream()
+                .map(CityService::createDTO)
+                .toList();
+    }
+}
@@ -0,0 +1,97 @@
+package kz.hustle.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of Weather API search responses and matching of the search results, as done by
+ * WeatherService.getIdFromSearchAPI and getCurrentWeatherForCitySearch. The *Tree benchmarks parse the response
+ * into a JsonNode tree, as it was done before the streaming parser of SearchLocation, and are kept for comparison.
+ * Allocation per operation is reported with the GC profiler: gradle jmh -PjmhIncludes=WeatherSearchBenchmark -PjmhProfilers=gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WeatherSearchBenchmark {
+
+    @Param({"2", "10", "100", "1000"})
+    private int locations;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] searchResponse;
+    private List<SearchLocation> parsedResponse;
+
+    @Setup
+    public void setUp() throws IOException {
+        ArrayNode array = objectMapper.createArrayNode();
+        for (int i = 0; i < locations; i++) {
+            array.addObject()
+                    .put("id", 1_000_000 + i)
+                    .put("name", "Springfield")
+                    .put("region", "Region " + i)
+                    .put("country", i % 2 == 0 ? "United States of America" : "Canada")
+                    .put("lat", 39.8 + i / 100.0)
+                    .put("lon", -89.6 - i / 100.0)
+                    .put("url", "springfield-region-" + i);
+        }
+        searchResponse = objectMapper.writeValueAsBytes(array);
+        parsedResponse = parse();
+    }
+
+    @Benchmark
+    public JsonNode parseSearchResponseTree() throws IOException {
+        return objectMapper.readTree(searchResponse);
+    }
+
+    @Benchmark
+    public List<SearchLocation> parseSearchResponse() throws IOException {
+        return parse();
+    }
+
+    @Benchmark
+    public Integer selectLocationId() {
+        return WeatherService.selectLocationId(parsedResponse, "Canada", "Region " + (locations - 1));
+    }
+
+    @Benchmark
+    public void matchLocations(Blackhole blackhole) {
+        for (SearchLocation location : parsedResponse) {
+            blackhole.consume(WeatherService.matchesLocation(location, null, "Canada"));
+        }
+    }
+
+    @Benchmark
+    public Integer parseAndSelectLocationIdTree() throws IOException {
+        JsonNode jsonArray = objectMapper.readTree(searchResponse);
+        String region = "Region " + (locations - 1);
+        Integer result = jsonArray.get(0).get("id").asInt();
+        for (JsonNode jsonNode : jsonArray) {
+            if (jsonNode.get("country").asText().equals("Canada") && jsonNode.get("region").asText().equals(region)) {
+                result = jsonNode.get("id").asInt();
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Integer parseAndSelectLocationId() throws IOException {
+        return WeatherService.selectLocationId(parse(), "Canada", "Region " + (locations - 1));
+    }
+
+    private List<SearchLocation> parse() throws IOException {
+        try (JsonParser parser = objectMapper.createParser(searchResponse)) {
+            return SearchLocation.readList(parser);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package kz.hustle.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import kz.hustle.Main;
+import kz.hustle.dto.CityDTO;
+import kz.hustle.service.CityService;
+import kz.hustle.stub.WeatherApiStubServer;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * Repeatable load test for the weather endpoints. Starts the Weather API stub and the application with an in-memory
+ * database, then runs every scenario with a fixed number of concurrent clients and reports throughput and
+ * p50/p99 latency. Results are also written as JSON to the report file.
+ * <p>
+ * Options: --duration=20s --warmup=5s --concurrency=64 --cities=50 --stub-latency=100ms --stub-jitter=20ms
+ * --stub-error-rate=0 --report=build/reports/loadtest/weather.json
+ * <p>
+ * Other --name=value arguments are passed to the application, e.g. --spring.threads.virtual.enabled=true to compare
+ * virtual and platform threads, or --weatherapi.cache.current.ttl=0s to measure uncached upstream calls.
+ */
+public class WeatherLoadTest {
+
+    private record Scenario(String name, IntFunction<String> path) {
+    }
+
+    public record Result(String scenario, long requests, long errors, double throughput,
+                         double p50Millis, double p99Millis, double maxMillis) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(Map.of(
+                "duration", "20s",
+                "warmup", "5s",
+                "concurrency", "64",
+                "cities", "50",
+                "stub-latency", "100ms",
+                "stub-jitter", "20ms",
+                "stub-error-rate", "0",
+                "report", "build/reports/loadtest/weather.json"));
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            String name = separator > 2 ? arg.substring(2, separator) : "";
+            if (arg.startsWith("--") && options.containsKey(name)) {
+                options.put(name, arg.substring(separator + 1));
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+        Duration duration = DurationStyle.detectAndParse(options.get("duration"));
+        Duration warmup = DurationStyle.detectAndParse(options.get("warmup"));
+        int concurrency = Integer.parseInt(options.get("concurrency"));
+        int cities = Integer.parseInt(options.get("cities"));
+
+        try (WeatherApiStubServer stub = WeatherApiStubServer.start(0)
+                .withLatency(DurationStyle.detectAndParse(options.get("stub-latency")),
+                        DurationStyle.detectAndParse(options.get("stub-jitter")))
+                .withErrors(Double.parseDouble(options.get("stub-error-rate")), 500)) {
+            List<String> springArgs = new ArrayList<>(List.of(
+                    "--server.port=0",
+                    "--spring.datasource.url=jdbc:h2:mem:loadtest",
+                    "--spring.jpa.hibernate.ddl-auto=create-drop",
+                    "--weatherapi.base-url=" + stub.getBaseUrl(),
+                    "--weatherapi.key=load-test",
+                    //The stub has no plan limits, the client-side limits would cap the measured throughput
+                    "--weatherapi.rate-limit.search.per-minute=100000000",
+                    "--weatherapi.rate-limit.current.per-minute=100000000",
+                    "--weatherapi.rate-limit.forecast.per-minute=100000000",
+                    "--weatherapi.quota.monthly=0"));
+            springArgs.addAll(applicationArgs);
+            try (ConfigurableApplicationContext application = SpringApplication.run(Main.class, springArgs.toArray(String[]::new))) {
+                String baseUrl = "http://localhost:" + application.getEnvironment().getRequiredProperty("local.server.port");
+                List<Long> cityIds = createCities(application.getBean(CityService.class), cities);
+                List<Scenario> scenarios = List.of(
+                        new Scenario("GET /weather/current?city={name}",
+                                i -> "/weather/current?city=Hyderabad"),
+                        new Scenario("GET /weather/current/{cityId}",
+                                i -> "/weather/current/" + cityIds.get(i % cityIds.size())),
+                        new Scenario("GET /weather/forecast?cid={cityId}&days=3",
+                                i -> "/weather/forecast?cid=" + cityIds.get(i % cityIds.size()) + "&days=3"));
+
+                HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+                List<Result> results = new ArrayList<>();
+                for (Scenario scenario : scenarios) {
+                    run(client, baseUrl, scenario, concurrency, warmup);
+                    results.add(run(client, baseUrl, scenario, concurrency, duration));
+                }
+                report(results, options, applicationArgs);
+            }
+        }
+    }
+
+    private static List<Long> createCities(CityService cityService, int count) {
+        List<Long> cityIds = new ArrayList<>();
+        cityIds.add(cityService.createCity(new CityDTO("Almaty", "Almaty City", "Kazakhstan")).getCityId());
+        //Other cities are synthetic locations of the stub
+        for (int i = 1; i < count; i++) {
+            cityIds.add(cityService.createCity(new CityDTO("Load City " + i, "Load Region", "Stubland")).getCityId());
+        }
+        return cityIds;
+    }
+
+    private static Result run(HttpClient client, String baseUrl, Scenario scenario, int concurrency, Duration duration)
+            throws InterruptedException, ExecutionException {
+        long startedAt = System.nanoTime();
+        long deadline = startedAt + duration.toNanos();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            long[] errors = new long[concurrency];
+            for (int worker = 0; worker < concurrency; worker++) {
+                int workerIndex = worker;
+                futures.add(workers.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    for (int i = workerIndex; System.nanoTime() < deadline; i += concurrency) {
+                        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + scenario.path().apply(i))).GET().build();
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() != 200) {
+                                errors[workerIndex]++;
+                            }
+                        } catch (IOException e) {
+                            errors[workerIndex]++;
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - start;
+                    }
+                    return Arrays.copyOf(latencies, count);
+                }));
+            }
+            long[] all = new long[0];
+            for (Future<long[]> future : futures) {
+                long[] latencies = future.get();
+                int offset = all.length;
+                all = Arrays.copyOf(all, offset + latencies.length);
+                System.arraycopy(latencies, 0, all, offset, latencies.length);
+            }
+            double elapsedSeconds = (System.nanoTime() - startedAt) / 1e9;
+            Arrays.sort(all);
+            return new Result(scenario.name(), all.length, Arrays.stream(errors).sum(), all.length / elapsedSeconds,
+                    percentileMillis(all, 0.50), percentileMillis(all, 0.99), percentileMillis(all, 1.0));
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private static double percentileMillis(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1e6;
+    }
+
+    private static void report(List<Result> results, Map<String, String> options, List<String> applicationArgs) throws IOException {
+        System.out.printf("%n%-45s %10s %8s %12s %10s %10s %10s%n", "Scenario", "Requests", "Errors", "Req/s", "p50 ms", "p99 ms", "max ms");
+        for (Result result : results) {
+            System.out.printf("%-45s %10d %8d %12.1f %10.2f %10.2f %10.2f%n", result.scenario(), result.requests(), result.errors(),
+                    result.throughput(), result.p50Millis(), result.p99Millis(), result.maxMillis());
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("options", options);
+        report.put("applicationArgs", applicationArgs);
+        report.put("results", results);
+        File reportFile = new File(options.get("report"));
+        reportFile.getAbsoluteFile().getParentFile().mkdirs();
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile, report);
+        System.out.println("Report written to " + reportFile.getAbsolutePath());
+    }
+}
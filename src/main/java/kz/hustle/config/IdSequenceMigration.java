@@ -0,0 +1,91 @@
+package kz.hustle.config;
+
+import org.flywaydb.core.api.MigrationVersion;
+import org.flywaydb.core.api.migration.Context;
+import org.flywaydb.core.api.migration.JavaMigration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Creates the id sequences of City, Region and Country with increment equal to the configured allocation size.
+ * Databases created before the switch from IDENTITY columns already contain rows, so every sequence starts above
+ * the maximum existing id. The migration is repeatable and its checksum is the allocation size, so changing
+ * db.id-sequence.allocation-size restarts the sequences with the new increment on the next start.
+ * Hibernate adjusts its allocation size to the sequence increment (increment_size_mismatch_strategy=fix).
+ */
+@Component
+public class IdSequenceMigration implements JavaMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(IdSequenceMigration.class);
+
+    private static final Map<String, String> SEQUENCES = Map.of(
+            "country", "country_seq",
+            "region", "region_seq",
+            "city", "city_seq");
+
+    @Value("${db.id-sequence.allocation-size:50}")
+    private int allocationSize;
+
+    @Override
+    public MigrationVersion getVersion() {
+        //Repeatable migration
+        return null;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Pooled id sequences";
+    }
+
+    @Override
+    public Integer getChecksum() {
+        return allocationSize;
+    }
+
+    @Override
+    public boolean canExecuteInTransaction() {
+        return true;
+    }
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        if (allocationSize < 1) {
+            throw new IllegalStateException("Id sequence allocation size must be positive: " + allocationSize);
+        }
+        Connection connection = context.getConnection();
+        for (Map.Entry<String, String> sequence : SEQUENCES.entrySet()) {
+            //Pooled optimizer takes ids from (value - allocationSize, value], so the first value must be maxId + allocationSize
+            long start = maxId(connection, sequence.getKey()) + allocationSize;
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE SEQUENCE IF NOT EXISTS " + sequence.getValue() +
+                        " START WITH " + start + " INCREMENT BY " + allocationSize);
+                statement.execute("ALTER SEQUENCE " + sequence.getValue() +
+                        " RESTART WITH " + start + " INCREMENT BY " + allocationSize);
+            }
+            log.info("Sequence {} restarted with {}, increment {}", sequence.getValue(), start, allocationSize);
+        }
+    }
+
+    private static long maxId(Connection connection, String table) throws SQLException {
+        //Tables do not exist yet in a new database, they are created by Hibernate after migrations
+        try (ResultSet tables = connection.getMetaData().getTables(null, connection.getSchema(), table.toUpperCase(Locale.ROOT), null)) {
+            if (!tables.next()) {
+                return 0;
+            }
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+}
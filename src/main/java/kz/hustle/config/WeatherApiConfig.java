@@ -0,0 +1,72 @@
+package kz.hustle.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import kz.hustle.service.RetryBudget;
+import kz.hustle.service.WeatherCache;
+import kz.hustle.service.WeatherForecastCache;
+import kz.hustle.service.WeatherPayload;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+//Scheduling is used by WeatherPrewarmer
+@Configuration
+@EnableScheduling
+public class WeatherApiConfig {
+
+    @Bean
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public HttpClient weatherApiHttpClient(@Value("${weatherapi.http.connect-timeout:2s}") Duration connectTimeout) {
+        return HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+
+    //Enabled by spring.threads.virtual.enabled=true on Java 21+, the same switch moves Tomcat request handling to virtual threads
+    @Bean
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public HttpClient virtualThreadWeatherApiHttpClient(@Value("${weatherapi.http.connect-timeout:2s}") Duration connectTimeout) {
+        return HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .executor(new VirtualThreadTaskExecutor("weatherapi-"))
+                .build();
+    }
+
+    //Key is the Weather API location id. Error responses (e.g. "No matching location found") are not cached
+    @Bean
+    public WeatherCache<Integer, WeatherPayload> currentWeatherCache(
+            @Value("${weatherapi.cache.current.ttl:5m}") Duration ttl,
+            @Value("${weatherapi.cache.current.grace:1m}") Duration grace,
+            @Value("${weatherapi.cache.current.stale-if-error:1h}") Duration staleIfError,
+            @Value("${weatherapi.cache.current.maximum-size:10000}") long maximumSize,
+            MeterRegistry meterRegistry) {
+        return new WeatherCache<>("weather-current", ttl, grace, staleIfError, maximumSize, payload -> !payload.isError(),
+                meterRegistry);
+    }
+
+    //Key is the Weather API location id, entries expire at the latest at the local midnight of the location
+    @Bean
+    public WeatherForecastCache weatherForecastCache(
+            @Value("${weatherapi.cache.forecast.ttl:1h}") Duration ttl,
+            @Value("${weatherapi.cache.forecast.fetch-days:3}") int fetchDays,
+            @Value("${weatherapi.cache.forecast.maximum-size:10000}") long maximumSize,
+            MeterRegistry meterRegistry) {
+        return new WeatherForecastCache(ttl, fetchDays, maximumSize, meterRegistry);
+    }
+
+    //Shared by all Weather API endpoints
+    @Bean
+    public RetryBudget weatherApiRetryBudget(
+            @Value("${weatherapi.retry.budget-ratio:0.1}") double ratio,
+            @Value("${weatherapi.retry.budget-max:20}") int maxTokens,
+            MeterRegistry meterRegistry) {
+        return new RetryBudget(ratio, maxTokens, meterRegistry);
+    }
+}
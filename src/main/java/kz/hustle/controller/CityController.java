@@ -1,17 +1,26 @@
 package kz.hustle.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import kz.hustle.dto.CityDTO;
+import kz.hustle.dto.CityImportResult;
 import kz.hustle.entity.City;
+import kz.hustle.service.CityImportService;
 import kz.hustle.service.CityService;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
@@ -19,22 +28,77 @@ import java.util.List;
 @Tag(name = "City API", description = "Operations related to city management")
 public class CityController {
 
+    private static final int MAX_SEARCH_LIMIT = 100;
+
     private CityService cityService;
+    private CityImportService cityImportService;
 
-    public CityController(CityService cityService) {
+    public CityController(CityService cityService, CityImportService cityImportService) {
         this.cityService = cityService;
+        this.cityImportService = cityImportService;
     }
 
-    @Operation(summary = "Get all cities", description = "Retrieves a list of all cities")
+    @Operation(summary = "Get all cities", description = "Retrieves a page of cities ordered by id. If there are more " +
+            "cities, the cursor for the next page is returned in the X-Next-Cursor header and should be passed as \"after\" parameter.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved list"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor"),
             @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     @GetMapping("/all")
-    public List<CityDTO> getAllCities(
-            @RequestParam(required = false) String country
+    public ResponseEntity<List<CityDTO>> getAllCities(
+            @RequestParam(required = false) String country,
+            @Parameter(description = "Page size, up to 1000")
+            @RequestParam(defaultValue = PageCursors.DEFAULT_LIMIT) int limit,
+            @Parameter(description = "Cursor from X-Next-Cursor header of the previous page")
+            @RequestParam(required = false) String after
+    ) {
+        int pageSize = PageCursors.limit(limit);
+        return PageCursors.toResponse(cityService.getCities(country, PageCursors.decode(after), pageSize));
+    }
+
+    @Operation(summary = "Search cities by name prefix", description = "Returns cities whose name starts with the prefix, " +
+            "ignoring case and diacritics (\"sao\" matches \"S\u00e3o Paulo\"), ordered by name. Intended for autocomplete.")
+    @GetMapping("/search")
+    public List<CityDTO> searchCities(
+            @RequestParam String prefix,
+            @Parameter(description = "Maximum number of cities, up to " + MAX_SEARCH_LIMIT)
+            @RequestParam(defaultValue = "10") int limit
     ) {
-        return cityService.getCities(country);
+        return cityService.searchCities(prefix, Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT)));
+    }
+
+    @Operation(summary = "Export all cities", description = "Streams all cities ordered by id as newline-delimited JSON " +
+            "(one city object per line). Intended for synchronization jobs, the output starts immediately and is not paginated.")
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public void exportCities(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        cityService.exportCities(response.getOutputStream());
+    }
+
+    @Operation(summary = "Import cities", description = "Creates cities from a JSON array of objects with cityName, " +
+            "regionName and countryName fields. Missing countries and regions are created. Rows that can not be imported " +
+            "are reported in the result and do not stop the import.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Import finished, see the result for rejected rows"),
+            @ApiResponse(responseCode = "400", description = "Request body is not a JSON array")
+    })
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> importCitiesFromJson(InputStream body) throws IOException {
+        try {
+            return ResponseEntity.ok(cityImportService.importJson(body));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    @Operation(summary = "Import cities from CSV", description = "Creates cities from UTF-8 CSV with cityName, regionName " +
+            "and countryName columns, the header line is optional. Missing countries and regions are created. Rows that " +
+            "can not be imported are reported in the result and do not stop the import.")
+    @PostMapping(value = "/import", consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE})
+    public CityImportResult importCitiesFromCsv(InputStream body) {
+        return cityImportService.importCsv(new InputStreamReader(body, StandardCharsets.UTF_8));
     }
 
     @Operation(summary = "Get city by ID", description = "Fetch a specific city by its ID")
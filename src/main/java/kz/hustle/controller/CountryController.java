@@ -1,6 +1,7 @@
 package kz.hustle.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -25,14 +26,21 @@ public class CountryController {
         this.countryService = countryService;
     }
 
-    @Operation(summary = "Get all countries", description = "Retrieves a list of all countries")
+    @Operation(summary = "Get all countries", description = "Retrieves a page of countries ordered by id. If there are more " +
+            "countries, the cursor for the next page is returned in the X-Next-Cursor header and should be passed as \"after\" parameter.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved list"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor"),
             @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     @GetMapping("/all")
-    public List<Country> getAllCountries() {
-        return countryService.getAllCountries();
+    public ResponseEntity<List<Country>> getAllCountries(
+            @Parameter(description = "Page size, up to 1000")
+            @RequestParam(defaultValue = PageCursors.DEFAULT_LIMIT) int limit,
+            @Parameter(description = "Cursor from X-Next-Cursor header of the previous page")
+            @RequestParam(required = false) String after
+    ) {
+        return PageCursors.toResponse(countryService.getAllCountries(PageCursors.decode(after), PageCursors.limit(limit)));
     }
 
     @Operation(summary = "Get country by ID", description = "Fetch a specific country by its ID")
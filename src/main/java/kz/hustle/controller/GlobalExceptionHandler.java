@@ -29,6 +29,16 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(ex.getMessage());
     }
 
+    @ExceptionHandler(WeatherAPIUnavailableException.class)
+    public ResponseEntity<String> handleWeatherAPIUnavailableException(WeatherAPIUnavailableException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(WeatherAPIQuotaExceededException.class)
+    public ResponseEntity<String> handleWeatherAPIQuotaExceededException(WeatherAPIQuotaExceededException ex) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(ex.getMessage());
+    }
+
     @ExceptionHandler(ConnectException.class)
     public ResponseEntity<String> handleConnectException(ConnectException ex) {
         return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Weather API is unavailable. Check your network connection.");
@@ -55,6 +65,11 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errors.toString());
     }
 
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<String> handleInvalidCursorException(InvalidCursorException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
     @ExceptionHandler(CountryAlreadyExistsException.class)
     public ResponseEntity<String> handleCountryAlreadyExistsException(CountryAlreadyExistsException ex) {
         StringBuilder errors = new StringBuilder();
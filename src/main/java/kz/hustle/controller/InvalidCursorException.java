@@ -0,0 +1,7 @@
+package kz.hustle.controller;
+
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
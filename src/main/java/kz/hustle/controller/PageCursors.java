@@ -0,0 +1,54 @@
+package kz.hustle.controller;
+
+import kz.hustle.dto.CursorPage;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Opaque cursors for the keyset paginated listings. The page items are returned as the response body (as before
+ * pagination was added), the cursor of the next page is returned in the X-Next-Cursor header.
+ */
+final class PageCursors {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String DEFAULT_LIMIT = "100";
+    static final int MAX_LIMIT = 1000;
+    private static final String PREFIX = "id:";
+
+    private PageCursors() {
+    }
+
+    static long decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0L;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (value.startsWith(PREFIX)) {
+                return Long.parseLong(value.substring(PREFIX.length()));
+            }
+        } catch (IllegalArgumentException e) {
+            //Falls through to the exception below, NumberFormatException is IllegalArgumentException too
+        }
+        throw new InvalidCursorException("Invalid cursor: " + cursor);
+    }
+
+    static String encode(long afterId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((PREFIX + afterId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static int limit(int requested) {
+        return Math.max(1, Math.min(requested, MAX_LIMIT));
+    }
+
+    static <T> ResponseEntity<List<T>> toResponse(CursorPage<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextAfterId() != null) {
+            response.header(NEXT_CURSOR_HEADER, encode(page.nextAfterId()));
+        }
+        return response.body(page.items());
+    }
+}
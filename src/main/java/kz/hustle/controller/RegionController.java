@@ -6,6 +6,7 @@ import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import kz.hustle.dto.CursorPage;
 import kz.hustle.dto.RegionDTO;
 import kz.hustle.entity.Region;
 import kz.hustle.service.RegionService;
@@ -13,8 +14,6 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/region")
 @Tag(name = "Region API", description = "Operations related to region management")
@@ -26,10 +25,12 @@ public class RegionController {
         this.regionService = regionService;
     }
 
-    @Operation(summary = "Get regions list", description = "Retrieves a list of all regions. " +
-            "If country parameter passed, returns only the regions of the specified country.")
+    @Operation(summary = "Get regions list", description = "Retrieves a page of regions ordered by id. " +
+            "If country parameter passed, returns only the regions of the specified country. If there are more regions, " +
+            "the cursor for the next page is returned in the X-Next-Cursor header and should be passed as \"after\" parameter.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved list"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor"),
             @ApiResponse(responseCode = "404", description = "Specified country not found"),
             @ApiResponse(responseCode = "500", description = "Internal server error")
     })
@@ -47,16 +48,22 @@ public class RegionController {
                             )
                     },
                     required = false)
-            @RequestParam(required = false) String country
+            @RequestParam(required = false) String country,
+            @Parameter(description = "Page size, up to 1000")
+            @RequestParam(defaultValue = PageCursors.DEFAULT_LIMIT) int limit,
+            @Parameter(description = "Cursor from X-Next-Cursor header of the previous page")
+            @RequestParam(required = false) String after
     ) {
+        long afterId = PageCursors.decode(after);
+        int pageSize = PageCursors.limit(limit);
         try {
-            List<RegionDTO> result;
+            CursorPage<RegionDTO> result;
             if (country != null) {
-                result = regionService.getRegionsByCountry(country);
+                result = regionService.getRegionsByCountry(country, afterId, pageSize);
             } else {
-                result = regionService.getAllRegions();
+                result = regionService.getAllRegions(afterId, pageSize);
             }
-            return ResponseEntity.ok(result);
+            return PageCursors.toResponse(result);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
         }
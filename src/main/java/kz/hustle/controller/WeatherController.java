@@ -4,31 +4,63 @@ import com.fasterxml.jackson.databind.JsonNode;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import kz.hustle.service.WeatherPayload;
 import kz.hustle.service.WeatherService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-//Exceptions are handled globally by GlobalExceptionHandler
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+//Exceptions are handled globally by GlobalExceptionHandler.
+//Responses are returned as futures, so servlet threads are released while Weather API requests are in progress
 @RestController
 @RequestMapping("/weather")
 @Tag(name = "Weather API", description = "Operations related to retrieving weather data from https://www.weatherapi.com/")
 public class WeatherController {
 
     private final WeatherService weatherService;
+    //Weather API responses of single cities are sent as received, without parsing and serializing them again
+    private final boolean passthrough;
 
-    public WeatherController(WeatherService weatherService) {
+    public WeatherController(WeatherService weatherService,
+                             @Value("${weatherapi.passthrough.enabled:true}") boolean passthrough) {
         this.weatherService = weatherService;
+        this.passthrough = passthrough;
     }
 
     @Operation(summary = "Get weather by city id", description = "Retrieves from Weather API current weather for the city " +
             "that is stored in our application database.")
     @GetMapping("/current/{cityId}")
-    public ResponseEntity<?> getCurrentWeatherByCityId(
+    public CompletableFuture<ResponseEntity<?>> getCurrentWeatherByCityId(
             @Parameter(description = "Id of the city from internal database")
-            @PathVariable Long cityId
-    ) throws Exception {
-        JsonNode result = weatherService.getCurrentWeatherByCityId(cityId);
-        return ResponseEntity.ok(result);
+            @PathVariable Long cityId,
+
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        if (passthrough) {
+            return weatherService.getCurrentWeatherPayloadByCityIdAsync(cityId).thenApply(payload -> raw(payload, acceptEncoding));
+        }
+        return weatherService.getCurrentWeatherByCityIdAsync(cityId).thenApply(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Get weather for many cities", description = "Retrieves current weather for up to 500 cities " +
+            "stored in our application database. Returns an object keyed by city id, a city that is not found or for which " +
+            "Weather API fails gets an object with an \"error\" field instead of the weather.")
+    @PostMapping("/current/batch")
+    public CompletableFuture<ResponseEntity<?>> getCurrentWeatherBatch(
+            @Parameter(description = "Ids of the cities from internal database")
+            @RequestBody List<Long> cityIds
+    ) {
+        try {
+            return weatherService.getCurrentWeatherBatchAsync(cityIds).thenApply(ResponseEntity::ok);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage()));
+        }
     }
 
     /**
@@ -39,14 +71,13 @@ public class WeatherController {
      * @param region
      * @param country
      * @return
-     * @throws Exception
      */
     @Operation(summary = "Get current weather for cities with provided params", description = "Redirects our request directly to" +
             "Weather API. If just a city name provided, retrieves current weather for all the cities with the same name (e.g. if " +
             "pass \"Hyderabad\", it returns results for two cities with the same name located in different countries (India, Pakistan). For retrieving " +
             "the result for specified city, optional parameters for region and country may be provided.")
     @GetMapping("/current")
-    public ResponseEntity<?> getCurrentWeatherForCitySearch(
+    public CompletableFuture<ResponseEntity<JsonNode>> getCurrentWeatherForCitySearch(
             @Parameter(description = "City name", required = true)
             @RequestParam String city,
 
@@ -55,22 +86,64 @@ public class WeatherController {
 
             @Parameter(description = "Country name")
             @RequestParam(required = false) String country
-    ) throws Exception {
-        JsonNode result = weatherService.getCurrentWeatherForCitySearch(city, region, country);
-        return ResponseEntity.ok(result);
+    ) {
+        return weatherService.getCurrentWeatherForCitySearchAsync(city, region, country).thenApply(ResponseEntity::ok);
     }
 
 
     @Operation(summary = "Get weather forecast.", description = "Returns weather forecast for the city with specified Id " +
             "for the specified number of days.")
     @GetMapping("/forecast")
-    public ResponseEntity<?> getWeatherForecastByCityId(
+    public CompletableFuture<ResponseEntity<?>> getWeatherForecastByCityId(
             @Parameter(description = "Id of the city from internal database", required = true)
             @RequestParam Long cid,
 
             @Parameter(description = "Number of forecast days", required = true)
-            @RequestParam Integer days) throws Exception {
-        JsonNode result = weatherService.getWeatherForecastByCityId(cid, days);
-        return ResponseEntity.ok(result);
+            @RequestParam Integer days,
+
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        if (passthrough) {
+            return weatherService.getWeatherForecastPayloadByCityIdAsync(cid, days).thenApply(payload -> raw(payload, acceptEncoding));
+        }
+        return weatherService.getWeatherForecastByCityIdAsync(cid, days).thenApply(ResponseEntity::ok);
+    }
+
+    //Status is 200 for Weather API errors as well, the same as when the response is parsed
+    private static ResponseEntity<byte[]> raw(WeatherPayload payload, String acceptEncoding) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (payload.isGzipped() && acceptsGzip(acceptEncoding)) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(payload.getBody());
+        }
+        return response.body(payload.getUncompressedBody());
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].replace(" ", "");
+                    if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+                        return qualityAbove0(parameter.substring(2));
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //q=0, q=0.0 and q=0.000 refuse the coding. An invalid value is treated as a refusal, the uncompressed body always works
+    private static boolean qualityAbove0(String quality) {
+        try {
+            return Double.parseDouble(quality) > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
     }
 }
@@ -0,0 +1,18 @@
+package kz.hustle.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk city import. Only the first errors are listed, failed holds the total number of rejected rows.
+ *
+ * @param rows number of rows read from the input
+ */
+public record CityImportResult(long rows, long imported, long failed, long durationMillis, double rowsPerSecond,
+                               List<RowError> errors) {
+
+    /**
+     * @param row 1-based row number in the input, header line of a CSV file is not counted
+     */
+    public record RowError(long row, String message) {
+    }
+}
@@ -0,0 +1,21 @@
+package kz.hustle.dto;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Page of a listing ordered by id. nextAfterId is the id to continue from, or null if it is the last page.
+ */
+public record CursorPage<T>(List<T> items, Long nextAfterId) {
+
+    /**
+     * Creates the page from the rows fetched with limit + 1, the extra row only shows that there is a next page.
+     */
+    public static <T> CursorPage<T> of(List<T> fetched, int limit, Function<T, Long> idGetter) {
+        if (fetched.size() <= limit) {
+            return new CursorPage<>(fetched, null);
+        }
+        List<T> items = fetched.subList(0, limit);
+        return new CursorPage<>(items, idGetter.apply(items.get(limit - 1)));
+    }
+}
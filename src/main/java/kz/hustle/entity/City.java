@@ -1,6 +1,7 @@
 package kz.hustle.entity;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
@@ -10,8 +11,11 @@ import java.util.Objects;
 @Entity
 public class City {
 
+    //Ids are allocated in blocks of allocationSize, so inserts can be batched. The increment of the database sequence
+    //takes precedence over allocationSize (see IdSequenceMigration)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "city_seq")
+    @SequenceGenerator(name = "city_seq", sequenceName = "city_seq", allocationSize = 50)
     private Long id;
 
     @NotNull(message = "City name is required")
@@ -23,6 +27,10 @@ public class City {
     @JsonBackReference
     private Region region;
 
+    // Location id resolved through weatherapi.com search, cleared when the city is renamed or moved
+    @JsonIgnore
+    private Integer weatherApiId;
+
     public City() {
     }
 
@@ -55,6 +63,14 @@ public class City {
         this.region = region;
     }
 
+    public Integer getWeatherApiId() {
+        return weatherApiId;
+    }
+
+    public void setWeatherApiId(Integer weatherApiId) {
+        this.weatherApiId = weatherApiId;
+    }
+
     @Override
     public String toString() {
         return "City{" +
@@ -0,0 +1,108 @@
+package kz.hustle.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Location returned by the weatherapi.com search API. The id is the weatherapi.com location id.
+ */
+@Entity
+@Table(name = "weather_api_location", indexes = @Index(name = "idx_weather_api_location_name", columnList = "name"))
+public class WeatherApiLocation {
+
+    @Id
+    private Integer id;
+
+    private String name;
+
+    private String region;
+
+    private String country;
+
+    private Double lat;
+
+    private Double lon;
+
+    //Time of the search response the location was taken from
+    private Instant updatedAt;
+
+    public WeatherApiLocation() {
+    }
+
+    public WeatherApiLocation(Integer id, String name, String region, String country, Double lat, Double lon, Instant updatedAt) {
+        this.id = id;
+        this.name = name;
+        this.region = region;
+        this.country = country;
+        this.lat = lat;
+        this.lon = lon;
+        this.updatedAt = updatedAt;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public void setCountry(String country) {
+        this.country = country;
+    }
+
+    public Double getLat() {
+        return lat;
+    }
+
+    public void setLat(Double lat) {
+        this.lat = lat;
+    }
+
+    public Double getLon() {
+        return lon;
+    }
+
+    public void setLon(Double lon) {
+        this.lon = lon;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherApiLocation{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", region='" + region + '\'' +
+                ", country='" + country + '\'' +
+                '}';
+    }
+}
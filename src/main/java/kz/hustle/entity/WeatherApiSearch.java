@@ -0,0 +1,60 @@
+package kz.hustle.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of a weatherapi.com search by name: ids of the returned locations in the order of the response.
+ * The query is stored trimmed and in lower case.
+ */
+@Entity
+@Table(name = "weather_api_search")
+public class WeatherApiSearch {
+
+    @Id
+    private String query;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "weather_api_search_location", joinColumns = @JoinColumn(name = "query"))
+    @OrderColumn(name = "position")
+    @Column(name = "location_id")
+    private List<Integer> locationIds = new ArrayList<>();
+
+    private Instant searchedAt;
+
+    public WeatherApiSearch() {
+    }
+
+    public WeatherApiSearch(String query, List<Integer> locationIds, Instant searchedAt) {
+        this.query = query;
+        this.locationIds = locationIds;
+        this.searchedAt = searchedAt;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public List<Integer> getLocationIds() {
+        return locationIds;
+    }
+
+    public void setLocationIds(List<Integer> locationIds) {
+        this.locationIds = locationIds;
+    }
+
+    public Instant getSearchedAt() {
+        return searchedAt;
+    }
+
+    public void setSearchedAt(Instant searchedAt) {
+        this.searchedAt = searchedAt;
+    }
+}
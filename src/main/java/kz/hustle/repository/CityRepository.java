@@ -1,18 +1,52 @@
 package kz.hustle.repository;
 
+import kz.hustle.dto.CityDTO;
+import jakarta.persistence.QueryHint;
 import kz.hustle.entity.City;
-import kz.hustle.entity.Country;
-import kz.hustle.entity.Region;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface CityRepository extends JpaRepository<City, Long> {
-    @Query("SELECT c FROM City c WHERE c.region.country.name = :countryName")
-    List<City> findByCountryName(@Param("countryName") String countryName);
+    //City listings are built from a single join instead of loading the entity graph for every row.
+    //Pages are read by keyset (id > afterId), so the cost of a page does not depend on how deep it is
+    @Query("SELECT new kz.hustle.dto.CityDTO(c.id, c.name, r.name, co.name) FROM City c JOIN c.region r JOIN r.country co " +
+            "WHERE c.id > :afterId ORDER BY c.id")
+    List<CityDTO> findCityDTOs(@Param("afterId") Long afterId, Pageable pageable);
 
-    @Query("SELECT c FROM City c WHERE c.region.country.id = :countryId")
-    List<City> findByCountryId(@Param("countryId") String countryId);
+    //Forward-only cursor over all cities, rows are fetched from the database in chunks while the stream is consumed
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new kz.hustle.dto.CityDTO(c.id, c.name, r.name, co.name) FROM City c JOIN c.region r JOIN r.country co " +
+            "ORDER BY c.id")
+    Stream<CityDTO> streamAllCityDTOs();
+
+    @Query("SELECT new kz.hustle.dto.CityDTO(c.id, c.name, r.name, co.name) FROM City c JOIN c.region r JOIN r.country co " +
+            "WHERE co.name = :countryName AND c.id > :afterId ORDER BY c.id")
+    List<CityDTO> findCityDTOsByCountryName(@Param("countryName") String countryName, @Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT new kz.hustle.dto.CityDTO(c.id, c.name, r.name, co.name) FROM City c JOIN c.region r JOIN r.country co " +
+            "WHERE co.id = :countryId AND c.id > :afterId ORDER BY c.id")
+    List<CityDTO> findCityDTOsByCountryId(@Param("countryId") Long countryId, @Param("afterId") Long afterId, Pageable pageable);
+
+    //Cities with regions and countries in one query, so Weather API ids of many cities are resolved without a query per city
+    @Query("SELECT c FROM City c JOIN FETCH c.region r JOIN FETCH r.country WHERE c.id IN :ids")
+    List<City> findAllWithRegionAndCountryByIdIn(@Param("ids") Collection<Long> ids);
+
+    //Stores the id only if the city still has the name and region it was searched by and no id yet, so a search that
+    //finishes after the city is renamed or moved does not bring back the location of the old city
+    @Transactional
+    @Modifying
+    @Query("UPDATE City c SET c.weatherApiId = :weatherApiId WHERE c.id = :id AND c.weatherApiId IS NULL " +
+            "AND c.name = :name AND c.region.id = :regionId")
+    int updateWeatherApiId(@Param("id") Long id, @Param("name") String name, @Param("regionId") Long regionId,
+                           @Param("weatherApiId") Integer weatherApiId);
 }
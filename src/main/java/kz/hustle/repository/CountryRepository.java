@@ -1,12 +1,22 @@
 package kz.hustle.repository;
 
+import jakarta.persistence.QueryHint;
 import kz.hustle.entity.Country;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface CountryRepository extends JpaRepository<Country, Long> {
+    //Lookups by name and code are cached in the Hibernate query cache, and invalidated on any change of the country table
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     Optional<Country> findByName(String name);
 
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     Optional<Country> findByCountryCode(String countryCode);
+
+    List<Country> findByIdGreaterThanOrderById(Long afterId, Pageable pageable);
 }
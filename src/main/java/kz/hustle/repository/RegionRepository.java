@@ -1,8 +1,15 @@
 package kz.hustle.repository;
 
+import jakarta.persistence.QueryHint;
+import kz.hustle.dto.RegionDTO;
 import kz.hustle.entity.Country;
 import kz.hustle.entity.Region;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -10,7 +17,16 @@ import java.util.Optional;
 public interface RegionRepository extends JpaRepository<Region, Long> {
     Optional<Region> findByName(String name);
 
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     Optional<Region> findByNameAndCountry(String name, Country country);
 
     List<Region> findByCountry(Country country);
+
+    @Query("SELECT new kz.hustle.dto.RegionDTO(r.id, r.name, c.name) FROM Region r JOIN r.country c " +
+            "WHERE r.id > :afterId ORDER BY r.id")
+    List<RegionDTO> findRegionDTOs(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT new kz.hustle.dto.RegionDTO(r.id, r.name, c.name) FROM Region r JOIN r.country c " +
+            "WHERE c = :country AND r.id > :afterId ORDER BY r.id")
+    List<RegionDTO> findRegionDTOsByCountry(@Param("country") Country country, @Param("afterId") Long afterId, Pageable pageable);
 }
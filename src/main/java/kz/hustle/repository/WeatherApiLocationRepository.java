@@ -0,0 +1,12 @@
+package kz.hustle.repository;
+
+import kz.hustle.entity.WeatherApiLocation;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface WeatherApiLocationRepository extends JpaRepository<WeatherApiLocation, Integer> {
+    List<WeatherApiLocation> findByNameAndRegionAndCountryAndUpdatedAtAfter(String name, String region, String country,
+                                                                            Instant updatedAfter);
+}
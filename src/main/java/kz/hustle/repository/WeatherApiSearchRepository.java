@@ -0,0 +1,7 @@
+package kz.hustle.repository;
+
+import kz.hustle.entity.WeatherApiSearch;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface WeatherApiSearchRepository extends JpaRepository<WeatherApiSearch, String> {
+}
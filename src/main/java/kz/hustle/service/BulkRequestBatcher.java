@@ -0,0 +1,93 @@
+package kz.hustle.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Groups single-key lookups into bulk requests. The first key of a batch opens a window, keys submitted within
+ * the window are sent together when it closes, or earlier if the batch reaches the maximum size. Callers waiting
+ * for the same key share one result. No threads are blocked while a batch is collected.
+ */
+public class BulkRequestBatcher<K, V> {
+
+    private final int maxBatchSize;
+    private final Executor windowTimer;
+    private final Function<List<K>, CompletableFuture<Map<K, V>>> bulkLoader;
+    //Batch that is being collected, guarded by this
+    private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+
+    /**
+     * @param bulkLoader loads the values of all keys of a batch, keys missing in the result fail with IOException
+     */
+    public BulkRequestBatcher(Duration window, int maxBatchSize, Function<List<K>, CompletableFuture<Map<K, V>>> bulkLoader) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Max batch size must be positive: " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.windowTimer = CompletableFuture.delayedExecutor(window.toNanos(), TimeUnit.NANOSECONDS);
+        this.bulkLoader = bulkLoader;
+    }
+
+    public CompletableFuture<V> submit(K key) {
+        Map<K, CompletableFuture<V>> full = null;
+        CompletableFuture<V> result;
+        synchronized (this) {
+            result = pending.get(key);
+            if (result != null) {
+                return result;
+            }
+            result = new CompletableFuture<>();
+            pending.put(key, result);
+            if (pending.size() == 1) {
+                Map<K, CompletableFuture<V>> batch = pending;
+                windowTimer.execute(() -> flush(batch));
+            }
+            if (pending.size() >= maxBatchSize) {
+                full = pending;
+                pending = new LinkedHashMap<>();
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return result;
+    }
+
+    //Called when the window of the batch closes, the batch may have been sent already because it was full
+    private void flush(Map<K, CompletableFuture<V>> batch) {
+        synchronized (this) {
+            if (pending != batch) {
+                return;
+            }
+            pending = new LinkedHashMap<>();
+        }
+        send(batch);
+    }
+
+    private void send(Map<K, CompletableFuture<V>> batch) {
+        CompletableFuture<Map<K, V>> response;
+        try {
+            response = bulkLoader.apply(new ArrayList<>(batch.keySet()));
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((values, ex) -> batch.forEach((key, future) -> {
+            if (ex != null) {
+                future.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            } else if (values.containsKey(key)) {
+                future.complete(values.get(key));
+            } else {
+                future.completeExceptionally(new IOException("Bulk response has no result for " + key));
+            }
+        }));
+    }
+}
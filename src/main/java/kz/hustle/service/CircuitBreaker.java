@@ -0,0 +1,171 @@
+package kz.hustle.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Stops calls to a failing dependency.
+ * - Closed: calls are allowed, outcomes of the last slidingWindowSize calls are recorded. When at least minimumCalls
+ * are recorded and the share of failures reaches failureRateThreshold, the breaker opens.
+ * - Open: calls are rejected for openDuration, then the breaker becomes half-open.
+ * - Half-open: halfOpenCalls trial calls are allowed. The breaker closes when all of them succeed and opens again
+ * on the first failure.
+ * Every allowed call must be followed by {@link #onSuccess()} or {@link #onFailure()}, or by {@link #release()}
+ * if it is not made.
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    //Ring buffer of the outcomes of the last calls in closed state, true is a failure
+    private final boolean[] outcomes;
+    private int position;
+    private int recorded;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialPermits;
+    private int trialSuccesses;
+    private final Map<State, Counter> transitions = new EnumMap<>(State.class);
+    private final Counter rejected;
+
+    /**
+     * @param failureRateThreshold share of failed calls, from 0 to 1
+     */
+    public CircuitBreaker(String name, double failureRateThreshold, int slidingWindowSize, int minimumCalls,
+                          Duration openDuration, int halfOpenCalls, MeterRegistry meterRegistry) {
+        if (slidingWindowSize < 1 || minimumCalls < 1 || halfOpenCalls < 1) {
+            throw new IllegalArgumentException("Window size, minimum calls and half-open calls must be positive");
+        }
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.outcomes = new boolean[slidingWindowSize];
+        this.minimumCalls = Math.min(minimumCalls, slidingWindowSize);
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+        Gauge.builder("weather.api.circuit.state", this, breaker -> breaker.getState().ordinal())
+                .description("Circuit breaker state: 0 - closed, 1 - open, 2 - half-open")
+                .tag("endpoint", name)
+                .register(meterRegistry);
+        for (State to : State.values()) {
+            transitions.put(to, Counter.builder("weather.api.circuit.transitions")
+                    .description("Circuit breaker state changes")
+                    .tag("endpoint", name)
+                    .tag("state", to.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        this.rejected = Counter.builder("weather.api.circuit.rejected")
+                .description("Calls rejected by the circuit breaker")
+                .tag("endpoint", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return true if the call is allowed
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDurationNanos) {
+                rejected.increment();
+                return false;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialPermits == 0) {
+                rejected.increment();
+                return false;
+            }
+            trialPermits--;
+        }
+        return true;
+    }
+
+    /**
+     * Gives back the permit of an allowed call that was not made, e.g. because the call limits rejected it.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && trialPermits + trialSuccesses < halfOpenCalls) {
+            trialPermits++;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        record(true);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        switch (state) {
+            case CLOSED -> {
+                if (recorded == outcomes.length) {
+                    if (outcomes[position]) {
+                        failures--;
+                    }
+                } else {
+                    recorded++;
+                }
+                outcomes[position] = failure;
+                position = (position + 1) % outcomes.length;
+                if (failure) {
+                    failures++;
+                }
+                if (recorded >= minimumCalls && failures >= failureRateThreshold * recorded) {
+                    transition(State.OPEN);
+                }
+            }
+            case HALF_OPEN -> {
+                if (failure) {
+                    transition(State.OPEN);
+                } else if (++trialSuccesses == halfOpenCalls) {
+                    transition(State.CLOSED);
+                }
+            }
+            //Outcome of a call started before the breaker opened
+            case OPEN -> {
+            }
+        }
+    }
+
+    private void transition(State to) {
+        log.info("Circuit breaker {}: {} -> {}", name, state, to);
+        state = to;
+        switch (to) {
+            case OPEN -> openedAt = System.nanoTime();
+            case HALF_OPEN -> {
+                trialPermits = halfOpenCalls;
+                trialSuccesses = 0;
+            }
+            case CLOSED -> {
+                position = 0;
+                recorded = 0;
+                failures = 0;
+            }
+        }
+        transitions.get(to).increment();
+    }
+}
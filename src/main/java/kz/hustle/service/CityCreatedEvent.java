@@ -0,0 +1,10 @@
+package kz.hustle.service;
+
+import kz.hustle.entity.City;
+
+/**
+ * Published by createCity when the Weather API location id of the new city is to be resolved. The city is saved,
+ * its region and country are loaded.
+ */
+public record CityCreatedEvent(City city) {
+}
@@ -0,0 +1,422 @@
+package kz.hustle.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import kz.hustle.dto.CityDTO;
+import kz.hustle.dto.CityImportResult;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import jakarta.validation.ConstraintViolationException;
+import kz.hustle.entity.City;
+import kz.hustle.entity.Country;
+import kz.hustle.entity.Region;
+import kz.hustle.repository.CountryRepository;
+import kz.hustle.repository.RegionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Bulk import of cities. Countries and regions are looked up once per distinct name and created if missing,
+ * cities are persisted in chunks, each chunk in its own transaction and flushed by Hibernate as JDBC batches
+ * (hibernate.jdbc.batch_size). A batch rejected by the database is
+ * retried row by row, so one bad row is reported as an error and does not fail the rest of the import.
+ * Weather API ids are not resolved for imported cities, they are resolved on the first weather request.
+ */
+@Service
+public class CityImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(CityImportService.class);
+
+    private record ImportRow(long row, CityDTO city, String error) {
+    }
+
+    private record PendingCity(long row, String name, long regionId) {
+    }
+
+    private record RegionKey(long countryId, String name) {
+    }
+
+    private final CountryRepository countryRepository;
+    private final RegionRepository regionRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectReader cityReader;
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Value("${city.import.batch-size:500}")
+    private int batchSize;
+    @Value("${city.import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    public CityImportService(CountryRepository countryRepository, RegionRepository regionRepository, JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate, ApplicationEventPublisher eventPublisher,
+                             ObjectMapper objectMapper) {
+        this.countryRepository = countryRepository;
+        this.regionRepository = regionRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.cityReader = objectMapper.readerFor(CityDTO.class);
+    }
+
+    /**
+     * Imports cities from a JSON array of objects with cityName, regionName and countryName fields.
+     * The array is read element by element, reading stops at the first malformed element.
+     *
+     * @throws IllegalArgumentException if the input is not a JSON array
+     */
+    public CityImportResult importJson(InputStream in) throws IOException {
+        try (JsonParser parser = cityReader.createParser(in)) {
+            JsonToken first;
+            try {
+                first = parser.nextToken();
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Invalid JSON: " + e.getOriginalMessage());
+            }
+            if (first != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Expected a JSON array of cities");
+            }
+            return importRows(new Iterator<>() {
+                private long row;
+                private String error;
+                private boolean done;
+                //The parser is at the start of the next element or at the error, hasNext can be called again
+                private boolean advanced;
+
+                @Override
+                public boolean hasNext() {
+                    if (done) {
+                        return false;
+                    }
+                    if (advanced) {
+                        return true;
+                    }
+                    advanced = true;
+                    try {
+                        JsonToken token = parser.nextToken();
+                        if (token == null) {
+                            error = "Unexpected end of input";
+                        } else if (token == JsonToken.END_ARRAY) {
+                            done = true;
+                        }
+                    } catch (JsonProcessingException e) {
+                        error = e.getOriginalMessage();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return !done;
+                }
+
+                @Override
+                public ImportRow next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    advanced = false;
+                    row++;
+                    if (error == null) {
+                        try {
+                            return new ImportRow(row, cityReader.readValue(parser), null);
+                        } catch (JsonProcessingException e) {
+                            error = e.getOriginalMessage();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    //Position in a malformed document is unknown, so the rest of it is skipped
+                    done = true;
+                    return new ImportRow(row, null, "Invalid JSON, rest of the input is skipped: " + error);
+                }
+            });
+        }
+    }
+
+    /**
+     * Imports cities from CSV with cityName, regionName and countryName columns. The header line is optional,
+     * values containing commas or quotes must be quoted.
+     */
+    public CityImportResult importCsv(Reader in) {
+        BufferedReader reader = new BufferedReader(in);
+        return importRows(new Iterator<>() {
+            private long row;
+            private String line = readLine(true);
+
+            @Override
+            public boolean hasNext() {
+                return line != null;
+            }
+
+            @Override
+            public ImportRow next() {
+                if (line == null) {
+                    throw new NoSuchElementException();
+                }
+                ImportRow next;
+                List<String> values = parseCsvLine(line);
+                row++;
+                if (values == null) {
+                    next = new ImportRow(row, null, "Unterminated quoted value");
+                } else if (values.size() != 3) {
+                    next = new ImportRow(row, null, "Expected 3 columns: cityName,regionName,countryName");
+                } else {
+                    next = new ImportRow(row, new CityDTO(values.get(0), values.get(1), values.get(2)), null);
+                }
+                line = readLine(false);
+                return next;
+            }
+
+            private String readLine(boolean first) {
+                try {
+                    String next = reader.readLine();
+                    while (next != null && next.isBlank()) {
+                        next = reader.readLine();
+                    }
+                    if (first && next != null && next.toLowerCase(Locale.ROOT).startsWith("cityname")) {
+                        return readLine(false);
+                    }
+                    return next;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    private CityImportResult importRows(Iterator<ImportRow> rows) {
+        long startedAt = System.nanoTime();
+        Map<String, Long> countryIds = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name FROM country", rs -> {
+            countryIds.put(rs.getString("name"), rs.getLong("id"));
+        });
+        Map<RegionKey, Long> regionIds = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name, country_id FROM region", rs -> {
+            regionIds.put(new RegionKey(rs.getLong("country_id"), rs.getString("name")), rs.getLong("id"));
+        });
+        //Countries and regions that could not be created, so that the same error is not retried for every city
+        Map<Object, String> failedLookups = new HashMap<>();
+
+        RowErrors errorSink = new RowErrors(maxReportedErrors);
+        long total = 0;
+        long imported = 0;
+        List<PendingCity> batch = new ArrayList<>(batchSize);
+        while (rows.hasNext()) {
+            ImportRow row = rows.next();
+            total++;
+            if (row.error() != null) {
+                errorSink.add(row.row(), row.error());
+                continue;
+            }
+            CityDTO city = row.city();
+            String validationError = validate(city);
+            if (validationError != null) {
+                errorSink.add(row.row(), validationError);
+                continue;
+            }
+            String countryName = city.getCountryName().trim();
+            Long countryId = countryIds.get(countryName);
+            if (countryId == null && !failedLookups.containsKey(countryName)) {
+                countryId = createCountry(countryName, failedLookups);
+                if (countryId != null) {
+                    countryIds.put(countryName, countryId);
+                }
+            }
+            if (countryId == null) {
+                errorSink.add(row.row(), failedLookups.get(countryName));
+                continue;
+            }
+            RegionKey regionKey = new RegionKey(countryId, city.getRegionName().trim());
+            Long regionId = regionIds.get(regionKey);
+            if (regionId == null && !failedLookups.containsKey(regionKey)) {
+                regionId = createRegion(regionKey, failedLookups);
+                if (regionId != null) {
+                    regionIds.put(regionKey, regionId);
+                }
+            }
+            if (regionId == null) {
+                errorSink.add(row.row(), failedLookups.get(regionKey));
+                continue;
+            }
+            batch.add(new PendingCity(row.row(), city.getCityName().trim(), regionId));
+            if (batch.size() == batchSize) {
+                imported += insertBatch(batch, errorSink);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            imported += insertBatch(batch, errorSink);
+        }
+
+        long durationNanos = Math.max(System.nanoTime() - startedAt, 1);
+        if (total > 0) {
+            eventPublisher.publishEvent(GeoDataChangedEvent.all());
+        }
+        double rowsPerSecond = total * 1e9 / durationNanos;
+        log.info("Imported {} of {} cities in {} ms ({} rows/s), {} rows failed",
+                imported, total, durationNanos / 1_000_000, Math.round(rowsPerSecond), errorSink.count);
+        return new CityImportResult(total, imported, errorSink.count, durationNanos / 1_000_000, rowsPerSecond, errorSink.errors);
+    }
+
+    private static class RowErrors {
+        private final int maxReported;
+        private final List<CityImportResult.RowError> errors = new ArrayList<>();
+        private long count;
+
+        RowErrors(int maxReported) {
+            this.maxReported = maxReported;
+        }
+
+        void add(long row, String message) {
+            count++;
+            if (errors.size() < maxReported) {
+                errors.add(new CityImportResult.RowError(row, message));
+            }
+        }
+    }
+
+    private static String validate(CityDTO city) {
+        if (city == null) {
+            return "Empty row";
+        }
+        if (city.getCityName() == null || city.getCityName().isBlank()) {
+            return "City name is required";
+        }
+        if (city.getRegionName() == null || city.getRegionName().isBlank()) {
+            return "Region name is required";
+        }
+        if (city.getCountryName() == null || city.getCountryName().isBlank()) {
+            return "Country name is required";
+        }
+        return null;
+    }
+
+    private Long createCountry(String name, Map<Object, String> failedLookups) {
+        try {
+            return transactionTemplate.execute(status -> {
+                Country country = new Country();
+                country.setName(name);
+                return countryRepository.save(country).getId();
+            });
+        } catch (DataAccessException e) {
+            //The country may have been created by a concurrent request
+            Long existingId = countryRepository.findByName(name).map(Country::getId).orElse(null);
+            if (existingId == null) {
+                failedLookups.put(name, "Could not create country " + name + ": " + e.getMostSpecificCause().getMessage());
+            }
+            return existingId;
+        }
+    }
+
+    private Long createRegion(RegionKey key, Map<Object, String> failedLookups) {
+        try {
+            return transactionTemplate.execute(status -> {
+                Region region = new Region();
+                region.setName(key.name());
+                region.setCountry(countryRepository.getReferenceById(key.countryId()));
+                return regionRepository.save(region).getId();
+            });
+        } catch (DataAccessException e) {
+            Long existingId = jdbcTemplate.query("SELECT id FROM region WHERE name = ? AND country_id = ?",
+                    rs -> rs.next() ? rs.getLong(1) : null, key.name(), key.countryId());
+            if (existingId == null) {
+                failedLookups.put(key, "Could not create region " + key.name() + ": " + e.getMostSpecificCause().getMessage());
+            }
+            return existingId;
+        }
+    }
+
+    private int insertBatch(List<PendingCity> batch, RowErrors errorSink) {
+        try {
+            persist(batch);
+            return batch.size();
+        } catch (DataAccessException | PersistenceException | ConstraintViolationException e) {
+            log.debug("City import batch failed, retrying row by row: {}", e.getMessage());
+        }
+        int inserted = 0;
+        for (PendingCity city : batch) {
+            try {
+                persist(List.of(city));
+                inserted++;
+            } catch (DataAccessException | PersistenceException | ConstraintViolationException e) {
+                errorSink.add(city.row(), NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+            }
+        }
+        return inserted;
+    }
+
+    private void persist(List<PendingCity> cities) {
+        transactionTemplate.executeWithoutResult(status -> {
+            try {
+                for (PendingCity city : cities) {
+                    entityManager.persist(new City(city.name(), entityManager.getReference(Region.class, city.regionId())));
+                }
+                entityManager.flush();
+            } finally {
+                //Imported cities are not needed after the chunk is written
+                entityManager.clear();
+            }
+        });
+    }
+
+    /**
+     * Splits a CSV line into values, handling quoted values with "" as an escaped quote.
+     *
+     * @return values, or null if a quoted value is not terminated
+     */
+    static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString().trim());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        values.add(value.toString().trim());
+        return values;
+    }
+}
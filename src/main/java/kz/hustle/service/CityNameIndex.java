@@ -0,0 +1,167 @@
+package kz.hustle.service;
+
+import kz.hustle.dto.CityDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index of city names for prefix search. Names are folded to lower case without diacritics, so "almaty",
+ * "ALMATY" and "Almaty" match the same cities and "sao" matches "Sao Paulo" written with a tilde. Entries are kept sorted by folded name,
+ * a search is a range scan that stops after the requested number of matches.
+ * The index is loaded when the application starts and updated after every committed change of cities, regions and countries.
+ */
+@Service
+public class CityNameIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(CityNameIndex.class);
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    //Separates the folded name from the id in index keys, sorts before any character of a name
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private static final String CITIES = "SELECT id, name, region_id FROM city";
+    private static final String REGIONS = "SELECT r.id, r.name, c.name FROM region r JOIN country c ON c.id = r.country_id";
+
+    private record Entry(long id, String name, long regionId) {
+    }
+
+    private record RegionLabel(String regionName, String countryName) {
+    }
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readTransaction;
+    //Replaced as a whole when the index is loaded, so searches never see a partially loaded index
+    private volatile ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    private volatile ConcurrentMap<Long, String> keysByCityId = new ConcurrentHashMap<>();
+    private volatile ConcurrentMap<Long, RegionLabel> regionLabels = new ConcurrentHashMap<>();
+
+    public CityNameIndex(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        //Events are handled after commit, when the connection of the committed transaction is still bound to the thread
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    /**
+     * @return up to limit cities whose folded name starts with the folded prefix, ordered by name
+     */
+    public List<CityDTO> search(String prefix, int limit) {
+        String folded = fold(prefix);
+        List<CityDTO> result = new ArrayList<>(Math.min(limit, 64));
+        if (folded.isEmpty()) {
+            return result;
+        }
+        ConcurrentNavigableMap<String, Entry> matches = entries.subMap(folded, true, folded + Character.MAX_VALUE, true);
+        for (Entry entry : matches.values()) {
+            RegionLabel label = regionLabels.get(entry.regionId());
+            if (label != null) {
+                result.add(new CityDTO(entry.id(), entry.name(), label.regionName(), label.countryName()));
+                if (result.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        long startedAt = System.nanoTime();
+        ConcurrentMap<Long, RegionLabel> loadedLabels = new ConcurrentHashMap<>();
+        ConcurrentSkipListMap<String, Entry> loadedEntries = new ConcurrentSkipListMap<>();
+        ConcurrentMap<Long, String> loadedKeys = new ConcurrentHashMap<>();
+        loadRegions(REGIONS, Map.of(), loadedLabels);
+        loadCities(CITIES, Map.of(), loadedEntries, loadedKeys);
+        regionLabels = loadedLabels;
+        entries = loadedEntries;
+        keysByCityId = loadedKeys;
+        log.info("City name index loaded in {} ms: {} cities", (System.nanoTime() - startedAt) / 1_000_000, loadedEntries.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onGeoDataChanged(GeoDataChangedEvent event) {
+        readTransaction.executeWithoutResult(status -> {
+            if (event.reloadAll()) {
+                load();
+                return;
+            }
+            if (!event.countryIds().isEmpty() || !event.regionIds().isEmpty()) {
+                //Regions are few, their labels are read again on any change of a region or a country
+                ConcurrentMap<Long, RegionLabel> labels = new ConcurrentHashMap<>();
+                loadRegions(REGIONS, Map.of(), labels);
+                boolean regionsDeleted = !labels.keySet().containsAll(regionLabels.keySet());
+                regionLabels = labels;
+                if (regionsDeleted) {
+                    //Cities of deleted regions were deleted by cascade
+                    entries.values().removeIf(entry -> {
+                        boolean removed = !labels.containsKey(entry.regionId());
+                        if (removed) {
+                            keysByCityId.remove(entry.id());
+                        }
+                        return removed;
+                    });
+                }
+            }
+            if (!event.cityIds().isEmpty()) {
+                for (Long cityId : event.cityIds()) {
+                    String key = keysByCityId.remove(cityId);
+                    if (key != null) {
+                        entries.remove(key);
+                    }
+                }
+                loadCities(CITIES + " WHERE id IN (:ids)", Map.of("ids", event.cityIds()), entries, keysByCityId);
+            }
+        });
+    }
+
+    private void loadRegions(String sql, Map<String, ?> params, Map<Long, RegionLabel> labels) {
+        jdbcTemplate.query(sql, params, rs -> {
+            labels.put(rs.getLong(1), new RegionLabel(rs.getString(2), rs.getString(3)));
+        });
+    }
+
+    private void loadCities(String sql, Map<String, ?> params, Map<String, Entry> entries, Map<Long, String> keysByCityId) {
+        jdbcTemplate.query(sql, params, rs -> {
+            long id = rs.getLong(1);
+            String name = rs.getString(2);
+            String key = fold(name) + KEY_SEPARATOR + id;
+            entries.put(key, new Entry(id, name, rs.getLong(3)));
+            keysByCityId.put(id, key);
+        });
+    }
+
+    /**
+     * Lower case without diacritics, e.g. "Shymkent" spelled with a cedilla becomes "shymkent".
+     */
+    static String fold(String name) {
+        if (name == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(name.strip(), Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+}
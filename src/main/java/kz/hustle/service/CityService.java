@@ -1,50 +1,132 @@
 package kz.hustle.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import kz.hustle.dto.CityDTO;
+import kz.hustle.dto.CursorPage;
 import kz.hustle.entity.City;
 import kz.hustle.entity.Country;
 import kz.hustle.entity.Region;
 import kz.hustle.repository.CityRepository;
 import kz.hustle.repository.CountryRepository;
 import kz.hustle.repository.RegionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
-
-import static org.apache.commons.lang3.StringUtils.isNumeric;
+import java.util.Objects;
+import java.util.stream.Stream;
 
 @Service
 public class CityService {
 
+    private static final Logger log = LoggerFactory.getLogger(CityService.class);
+
     private final CityRepository cityRepository;
     private final RegionRepository regionRepository;
     private final CountryRepository countryRepository;
+    private final WeatherService weatherService;
+    private final GeoSnapshotService geoSnapshotService;
+    private final CityNameIndex cityNameIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectWriter exportWriter;
+    @Value("${weatherapi.resolve-on-create:true}")
+    private boolean resolveOnCreate;
 
-    public CityService(CityRepository cityRepository, RegionRepository regionRepository, CountryRepository countryRepository) {
+    public CityService(CityRepository cityRepository, RegionRepository regionRepository, CountryRepository countryRepository,
+                       WeatherService weatherService, GeoSnapshotService geoSnapshotService, CityNameIndex cityNameIndex,
+                       ApplicationEventPublisher eventPublisher, ObjectMapper objectMapper) {
         this.cityRepository = cityRepository;
         this.regionRepository = regionRepository;
         this.countryRepository = countryRepository;
+        this.weatherService = weatherService;
+        this.geoSnapshotService = geoSnapshotService;
+        this.cityNameIndex = cityNameIndex;
+        this.eventPublisher = eventPublisher;
+        //Output is flushed by the servlet container buffer, not after every city
+        this.exportWriter = objectMapper.writerFor(CityDTO.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
-    @Transactional(readOnly = true)
-    public List<CityDTO> getCities(String country) {
+    /**
+     * Returns the page of cities with id greater than afterId, ordered by id.
+     *
+     * @param country name or id of the country, null for all cities
+     */
+    //Not transactional, so reads served from the geo snapshot do not touch the database
+    public CursorPage<CityDTO> getCities(String country, long afterId, int limit) {
+        GeoSnapshot snapshot = geoSnapshotService.current();
+        if (snapshot != null) {
+            if (country == null) {
+                return snapshot.getCities(afterId, limit);
+            }
+            long countryId = isNumeric(country)
+                    ? Long.parseLong(country)
+                    : snapshot.getCountryByName(country).map(Country::getId).orElse(-1L);
+            return snapshot.getCitiesByCountry(countryId, afterId, limit);
+        }
+        //One row more than requested shows whether there is a next page
+        Pageable pageable = PageRequest.ofSize(limit + 1);
+        List<CityDTO> cities;
         if (country == null) {
-            return getAllCities();
+            cities = cityRepository.findCityDTOs(afterId, pageable);
         } else {
             if (isNumeric(country)) {
-                return createDTOList(cityRepository
-                        .findByCountryId(country));
+                cities = cityRepository.findCityDTOsByCountryId(Long.parseLong(country), afterId, pageable);
             } else {
-                return createDTOList(cityRepository
-                        .findByCountryName(country));
+                cities = cityRepository.findCityDTOsByCountryName(country, afterId, pageable);
             }
         }
+        return CursorPage.of(cities, limit, CityDTO::getCityId);
+    }
+
+    /**
+     * Returns up to limit cities whose name starts with the prefix, ignoring case and diacritics, ordered by name.
+     */
+    public List<CityDTO> searchCities(String prefix, int limit) {
+        return cityNameIndex.search(prefix, limit);
     }
 
+    /**
+     * Writes all cities to the output stream as newline-delimited JSON, one CityDTO per line. Rows are read from
+     * a forward-only database cursor and written as they arrive, so memory use does not depend on the number of cities.
+     *
+     * @return number of exported cities
+     */
     @Transactional(readOnly = true)
+    public long exportCities(OutputStream out) throws IOException {
+        long count = 0;
+        try (Stream<CityDTO> cities = cityRepository.streamAllCityDTOs();
+             JsonGenerator generator = exportWriter.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            //Cities are separated by the newline only, not by the default space before every root value but the first
+            generator.setRootValueSeparator(null);
+            Iterator<CityDTO> iterator = cities.iterator();
+            while (iterator.hasNext()) {
+                exportWriter.writeValue(generator, iterator.next());
+                generator.writeRaw('\n');
+                count++;
+            }
+        }
+        return count;
+    }
+
     public CityDTO getCityById(Long id) {
+        GeoSnapshot snapshot = geoSnapshotService.current();
+        if (snapshot != null) {
+            return snapshot.getCity(id).orElseThrow(() -> new IllegalArgumentException("City with id " + id + " not found"));
+        }
         return createDTO(cityRepository
                 .findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("City with id " + id + " not found")));
@@ -52,34 +134,61 @@ public class CityService {
 
     @Transactional
     public CityDTO saveCity(City city) {
-        return createDTO(cityRepository.save(city));
+        City saved = cityRepository.save(city);
+        eventPublisher.publishEvent(GeoDataChangedEvent.city(saved.getId()));
+        return createDTO(saved);
     }
 
     @Transactional
     public CityDTO createCity(CityDTO cityDTO) {
+        //Ids of the country and the region are passed in the event only if they are created here, listeners then
+        //read just the new city
+        Long createdCountryId = null;
+        Long createdRegionId = null;
+
         // Fetch or create Country
-        Country country = countryRepository.findByName(cityDTO.getCountryName())
-                .orElseGet(() -> {
-                    Country newCountry = new Country();
-                    newCountry.setName(cityDTO.getCountryName());
-                    return countryRepository.save(newCountry);
-                });
+        Country country = countryRepository.findByName(cityDTO.getCountryName()).orElse(null);
+        if (country == null) {
+            Country newCountry = new Country();
+            newCountry.setName(cityDTO.getCountryName());
+            country = countryRepository.save(newCountry);
+            createdCountryId = country.getId();
+        }
 
         // Fetch or create Region
-        Region region = regionRepository.findByNameAndCountry(cityDTO.getRegionName(), country)
-                .orElseGet(() -> {
-                    Region newRegion = new Region();
-                    newRegion.setName(cityDTO.getRegionName());
-                    newRegion.setCountry(country);
-                    return regionRepository.save(newRegion);
-                });
+        Region region = regionRepository.findByNameAndCountry(cityDTO.getRegionName(), country).orElse(null);
+        if (region == null) {
+            Region newRegion = new Region();
+            newRegion.setName(cityDTO.getRegionName());
+            newRegion.setCountry(country);
+            region = regionRepository.save(newRegion);
+            createdRegionId = region.getId();
+        }
 
         // Create and save City
         City city = new City();
         city.setName(cityDTO.getCityName());
         city.setRegion(region);
 
-        return createDTO(cityRepository.save(city));
+        City saved = cityRepository.save(city);
+        eventPublisher.publishEvent(GeoDataChangedEvent.of(createdCountryId, createdRegionId, saved.getId()));
+        if (resolveOnCreate) {
+            eventPublisher.publishEvent(new CityCreatedEvent(saved));
+        }
+        return createDTO(saved);
+    }
+
+    //Runs after the city is committed, so no connection is held while Weather API is searched. The search is sent
+    //asynchronously and the id is stored in its own transaction.
+    //Weather API being unavailable must not prevent the city from being created, the id is resolved on the first weather request then
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCityCreated(CityCreatedEvent event) {
+        City city = event.city();
+        weatherService.resolveWeatherApiCityIdAsync(city).whenComplete((weatherApiCityId, ex) -> {
+            if (ex != null) {
+                log.warn("Could not resolve Weather API id for city {}: {}", city.getName(), WeatherService.unwrap(ex).getMessage());
+            }
+        });
     }
 
     @Transactional
@@ -87,20 +196,28 @@ public class CityService {
         City existingCity = cityRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("City not found"));
 
-        existingCity.setName(updatedCity.getCityName());
+        if (!Objects.equals(existingCity.getName(), updatedCity.getCityName())) {
+            existingCity.setName(updatedCity.getCityName());
+            //Renamed city has to be searched in Weather API again
+            existingCity.setWeatherApiId(null);
+        }
         if (updatedCity.getRegionName() != null && !updatedCity.getRegionName().equals(existingCity.getRegion().getName())) {
             Region newRegion = regionRepository
                     .findByName(updatedCity.getRegionName())
                     .orElseThrow(() -> new IllegalArgumentException("Region " + updatedCity.getRegionName() + " not exists. Please create the region first."));
             existingCity.setRegion(newRegion);
+            existingCity.setWeatherApiId(null);
         }
-        return createDTO(cityRepository.save(existingCity));
+        City saved = cityRepository.save(existingCity);
+        eventPublisher.publishEvent(GeoDataChangedEvent.city(id));
+        return createDTO(saved);
     }
 
     @Transactional
     public boolean deleteCity(Long id) {
         if (cityRepository.existsById(id)) {
             cityRepository.deleteById(id);
+            eventPublisher.publishEvent(GeoDataChangedEvent.city(id));
             return true;
         }
         return false;
@@ -120,19 +237,17 @@ public class CityService {
         return city.getRegion().getCountry();
     }
 
-    private List<CityDTO> getAllCities() {
-        return cityRepository.findAll().stream()
-                .map(this::createDTO)
-                .collect(Collectors.toList());
-    }
-
-    private List<CityDTO> createDTOList(List<City> cityList) {
-        return cityList.stream()
-                .map(this::createDTO)
-                .collect(Collectors.toList());
+    //Digit strings that do not fit into long are names, not ids
+    private boolean isNumeric(String str) {
+        try {
+            Long.parseLong(str);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
     }
 
-    private CityDTO createDTO(City city) {
+    static CityDTO createDTO(City city) {
         return new CityDTO(
                 city.getId(),
                 city.getName(),
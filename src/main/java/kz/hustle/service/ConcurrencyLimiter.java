@@ -0,0 +1,88 @@
+package kz.hustle.service;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of asynchronous tasks running at the same time. Tasks above the limit wait in a queue
+ * and are started in submission order when running tasks complete. No threads are blocked while waiting.
+ */
+public class ConcurrencyLimiter {
+
+    private final int maxConcurrency;
+    private final Queue<Runnable> waiting = new ArrayDeque<>();
+    private int running;
+    private int released;
+    private boolean draining;
+
+    public ConcurrencyLimiter(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Max concurrency must be positive: " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            CompletableFuture<T> future;
+            try {
+                future = task.get();
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((value, ex) -> {
+                release();
+                if (ex != null) {
+                    result.completeExceptionally(ex);
+                } else {
+                    result.complete(value);
+                }
+            });
+        };
+        boolean startNow;
+        synchronized (this) {
+            startNow = running < maxConcurrency;
+            if (startNow) {
+                running++;
+            } else {
+                waiting.add(start);
+            }
+        }
+        if (startNow) {
+            start.run();
+        }
+        return result;
+    }
+
+    //Tasks completing synchronously call release() from inside next.run(). Slots released while a thread is handing
+    //them over are counted and handed over by that thread in its loop, so the stack does not grow with the queue
+    private void release() {
+        synchronized (this) {
+            released++;
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            Runnable next;
+            synchronized (this) {
+                if (released == 0) {
+                    draining = false;
+                    return;
+                }
+                released--;
+                next = waiting.poll();
+                if (next == null) {
+                    running--;
+                    continue;
+                }
+            }
+            //The slot is handed over to the next waiting task
+            next.run();
+        }
+    }
+}
@@ -1,47 +1,61 @@
 package kz.hustle.service;
 
+import kz.hustle.dto.CursorPage;
 import kz.hustle.entity.Country;
 import kz.hustle.repository.CountryRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
 import java.util.Optional;
 
 @Service
 public class CountryService {
 
     private final CountryRepository repository;
+    private final GeoSnapshotService geoSnapshotService;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public CountryService(CountryRepository repository) {
+    public CountryService(CountryRepository repository, GeoSnapshotService geoSnapshotService, ApplicationEventPublisher eventPublisher) {
         this.repository = repository;
+        this.geoSnapshotService = geoSnapshotService;
+        this.eventPublisher = eventPublisher;
     }
 
-    @Transactional(readOnly = true)
-    public List<Country> getAllCountries() {
-        return repository.findAll();
+    //Read methods are not transactional, so reads served from the geo snapshot do not touch the database.
+    //Each of them runs a single repository query otherwise
+    public CursorPage<Country> getAllCountries(long afterId, int limit) {
+        GeoSnapshot snapshot = geoSnapshotService.current();
+        if (snapshot != null) {
+            return snapshot.getCountries(afterId, limit);
+        }
+        return CursorPage.of(repository.findByIdGreaterThanOrderById(afterId, PageRequest.ofSize(limit + 1)), limit, Country::getId);
     }
 
-    @Transactional(readOnly = true)
     public Country getCountryById(Long id) {
-        return repository.findById(id).orElseThrow(() -> new RuntimeException("Country with id " + id + " not found"));
+        GeoSnapshot snapshot = geoSnapshotService.current();
+        Optional<Country> country = snapshot != null ? snapshot.getCountry(id) : repository.findById(id);
+        return country.orElseThrow(() -> new RuntimeException("Country with id " + id + " not found"));
     }
 
-    @Transactional(readOnly = true)
     public Optional<Country> getCountryByName(String name) {
-        return repository.findByName(name);
+        GeoSnapshot snapshot = geoSnapshotService.current();
+        return snapshot != null ? snapshot.getCountryByName(name) : repository.findByName(name);
     }
 
-    @Transactional(readOnly = true)
     public Optional<Country> getCountryByCode(String code) {
-        return repository.findByCountryCode(code);
+        GeoSnapshot snapshot = geoSnapshotService.current();
+        return snapshot != null ? snapshot.getCountryByCode(code) : repository.findByCountryCode(code);
     }
 
     @Transactional
     public Country saveCountry(Country country) {
         try {
-            return repository.save(country);
+            Country saved = repository.save(country);
+            eventPublisher.publishEvent(GeoDataChangedEvent.country(saved.getId()));
+            return saved;
         } catch (DataIntegrityViolationException e) {
             throw new CountryAlreadyExistsException("Country " + country.getName() + " already exists.");
         }
@@ -60,7 +74,9 @@ public class CountryService {
             existingCountry.setCountryCode(updatedCountry.getCountryCode());
         }
         try {
-            return repository.saveAndFlush(existingCountry);
+            Country saved = repository.saveAndFlush(existingCountry);
+            eventPublisher.publishEvent(GeoDataChangedEvent.country(id));
+            return saved;
         } catch (DataIntegrityViolationException e) {
             throw new CountryAlreadyExistsException("Country " + newName + " already exists.");
         }
@@ -70,6 +86,7 @@ public class CountryService {
     public boolean deleteCountry(Long id) {
         if (repository.existsById(id)) {
             repository.deleteById(id);
+            eventPublisher.publishEvent(GeoDataChangedEvent.country(id));
             return true;
         }
         return false;
@@ -0,0 +1,37 @@
+package kz.hustle.service;
+
+import java.util.Set;
+
+/**
+ * Published by write operations on countries, regions and cities. Holds the ids of created, updated or deleted rows,
+ * rows deleted by cascade are not listed. reloadAll means that the changed rows are not known, e.g. after an import.
+ */
+public record GeoDataChangedEvent(Set<Long> countryIds, Set<Long> regionIds, Set<Long> cityIds, boolean reloadAll) {
+
+    public static GeoDataChangedEvent country(Long id) {
+        return of(id, null, null);
+    }
+
+    public static GeoDataChangedEvent region(Long id) {
+        return of(null, id, null);
+    }
+
+    public static GeoDataChangedEvent city(Long id) {
+        return of(null, null, id);
+    }
+
+    /**
+     * @param countryId id of the changed country or null, same for region and city
+     */
+    public static GeoDataChangedEvent of(Long countryId, Long regionId, Long cityId) {
+        return new GeoDataChangedEvent(ids(countryId), ids(regionId), ids(cityId), false);
+    }
+
+    public static GeoDataChangedEvent all() {
+        return new GeoDataChangedEvent(Set.of(), Set.of(), Set.of(), true);
+    }
+
+    private static Set<Long> ids(Long id) {
+        return id == null ? Set.of() : Set.of(id);
+    }
+}
@@ -0,0 +1,353 @@
+package kz.hustle.service;
+
+import kz.hustle.dto.CityDTO;
+import kz.hustle.dto.CursorPage;
+import kz.hustle.dto.RegionDTO;
+import kz.hustle.entity.Country;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable copy of the Country - Region - City tree. Rows are kept in parallel arrays sorted by id, so a row is found
+ * by binary search on the id array and a page ordered by id is a slice of the arrays. Regions and cities of a country
+ * are indexed by arrays of row positions. Changes produce a new snapshot, existing snapshots are never modified.
+ */
+final class GeoSnapshot {
+
+    static final GeoSnapshot EMPTY = new GeoSnapshot(Rows.EMPTY, Rows.EMPTY, Rows.EMPTY);
+
+    private static final int[] NO_ROWS = new int[0];
+
+    private final Rows countries;
+    private final Rows regions;
+    private final Rows cities;
+    private final Map<String, Integer> countryByName;
+    private final Map<String, Integer> countryByCode;
+    //Position of the parent row for every region and city
+    private final int[] regionCountry;
+    private final int[] cityRegion;
+    //Positions of regions and cities of every country, in id order
+    private final int[][] regionsByCountry;
+    private final int[][] citiesByCountry;
+
+    /**
+     * Regions of missing countries and cities of missing regions are dropped, they were deleted by cascade.
+     */
+    GeoSnapshot(Rows countries, Rows regions, Rows cities) {
+        this.countries = countries;
+        this.regions = regions.retainParents(countries.ids);
+        this.cities = cities.retainParents(this.regions.ids);
+        this.countryByName = new HashMap<>();
+        this.countryByCode = new HashMap<>();
+        for (int i = 0; i < countries.size(); i++) {
+            countryByName.putIfAbsent(countries.names[i], i);
+            if (countries.codes[i] != null) {
+                countryByCode.putIfAbsent(countries.codes[i], i);
+            }
+        }
+        this.regionCountry = parentPositions(this.regions, countries);
+        this.cityRegion = parentPositions(this.cities, this.regions);
+        this.regionsByCountry = groupByCountry(this.regions.size(), i -> regionCountry[i]);
+        this.citiesByCountry = groupByCountry(this.cities.size(), i -> regionCountry[cityRegion[i]]);
+    }
+
+    /**
+     * Returns a copy with the rows of the listed ids replaced by the given rows. Listed ids without a row are removed.
+     */
+    GeoSnapshot withChanges(GeoDataChangedEvent event, Rows changedCountries, Rows changedRegions, Rows changedCities) {
+        return new GeoSnapshot(
+                countries.replace(event.countryIds(), changedCountries),
+                regions.replace(event.regionIds(), changedRegions),
+                cities.replace(event.cityIds(), changedCities));
+    }
+
+    int countryCount() {
+        return countries.size();
+    }
+
+    int regionCount() {
+        return regions.size();
+    }
+
+    int cityCount() {
+        return cities.size();
+    }
+
+    CursorPage<Country> getCountries(long afterId, int limit) {
+        int from = firstAfter(countries.ids, afterId);
+        int to = (int) Math.min((long) from + limit, countries.size());
+        List<Country> items = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            items.add(country(i));
+        }
+        return new CursorPage<>(items, to < countries.size() ? countries.ids[to - 1] : null);
+    }
+
+    Optional<Country> getCountry(long id) {
+        int i = Arrays.binarySearch(countries.ids, id);
+        return i < 0 ? Optional.empty() : Optional.of(country(i));
+    }
+
+    Optional<Country> getCountryByName(String name) {
+        Integer i = countryByName.get(name);
+        return i == null ? Optional.empty() : Optional.of(country(i));
+    }
+
+    Optional<Country> getCountryByCode(String code) {
+        Integer i = countryByCode.get(code);
+        return i == null ? Optional.empty() : Optional.of(country(i));
+    }
+
+    CursorPage<RegionDTO> getRegions(long afterId, int limit) {
+        int from = firstAfter(regions.ids, afterId);
+        int to = (int) Math.min((long) from + limit, regions.size());
+        List<RegionDTO> items = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            items.add(region(i));
+        }
+        return new CursorPage<>(items, to < regions.size() ? regions.ids[to - 1] : null);
+    }
+
+    CursorPage<RegionDTO> getRegionsByCountry(long countryId, long afterId, int limit) {
+        int c = Arrays.binarySearch(countries.ids, countryId);
+        int[] positions = c < 0 ? NO_ROWS : regionsByCountry[c];
+        int from = firstAfter(positions, regions.ids, afterId);
+        int to = (int) Math.min((long) from + limit, positions.length);
+        List<RegionDTO> items = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            items.add(region(positions[i]));
+        }
+        return new CursorPage<>(items, to < positions.length ? regions.ids[positions[to - 1]] : null);
+    }
+
+    Optional<RegionDTO> getRegion(long id) {
+        int i = Arrays.binarySearch(regions.ids, id);
+        return i < 0 ? Optional.empty() : Optional.of(region(i));
+    }
+
+    CursorPage<CityDTO> getCities(long afterId, int limit) {
+        int from = firstAfter(cities.ids, afterId);
+        int to = (int) Math.min((long) from + limit, cities.size());
+        List<CityDTO> items = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            items.add(city(i));
+        }
+        return new CursorPage<>(items, to < cities.size() ? cities.ids[to - 1] : null);
+    }
+
+    CursorPage<CityDTO> getCitiesByCountry(long countryId, long afterId, int limit) {
+        int c = Arrays.binarySearch(countries.ids, countryId);
+        int[] positions = c < 0 ? NO_ROWS : citiesByCountry[c];
+        int from = firstAfter(positions, cities.ids, afterId);
+        int to = (int) Math.min((long) from + limit, positions.length);
+        List<CityDTO> items = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            items.add(city(positions[i]));
+        }
+        return new CursorPage<>(items, to < positions.length ? cities.ids[positions[to - 1]] : null);
+    }
+
+    Optional<CityDTO> getCity(long id) {
+        int i = Arrays.binarySearch(cities.ids, id);
+        return i < 0 ? Optional.empty() : Optional.of(city(i));
+    }
+
+    private Country country(int i) {
+        Country country = new Country(countries.codes[i], countries.names[i]);
+        country.setId(countries.ids[i]);
+        return country;
+    }
+
+    private RegionDTO region(int i) {
+        return new RegionDTO(regions.ids[i], regions.names[i], countries.names[regionCountry[i]]);
+    }
+
+    private CityDTO city(int i) {
+        int region = cityRegion[i];
+        return new CityDTO(cities.ids[i], cities.names[i], regions.names[region], countries.names[regionCountry[region]]);
+    }
+
+    private static int firstAfter(long[] ids, long afterId) {
+        int i = Arrays.binarySearch(ids, afterId);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    //Same as above for a list of row positions in id order
+    private static int firstAfter(int[] positions, long[] ids, long afterId) {
+        int low = 0;
+        int high = positions.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ids[positions[middle]] <= afterId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int[] parentPositions(Rows rows, Rows parents) {
+        int[] positions = new int[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            positions[i] = Arrays.binarySearch(parents.ids, rows.parentIds[i]);
+        }
+        return positions;
+    }
+
+    private int[][] groupByCountry(int size, IntUnaryOperator country) {
+        int[] counts = new int[countries.size()];
+        for (int i = 0; i < size; i++) {
+            counts[country.applyAsInt(i)]++;
+        }
+        int[][] groups = new int[countries.size()][];
+        for (int c = 0; c < groups.length; c++) {
+            groups[c] = counts[c] == 0 ? NO_ROWS : new int[counts[c]];
+            counts[c] = 0;
+        }
+        //Rows are visited in id order, so every group is in id order too
+        for (int i = 0; i < size; i++) {
+            int c = country.applyAsInt(i);
+            groups[c][counts[c]++] = i;
+        }
+        return groups;
+    }
+
+    /**
+     * Rows of one table in parallel arrays sorted by id. parentIds holds the country id of a region and the region id
+     * of a city, codes holds country codes.
+     */
+    static final class Rows {
+
+        static final Rows EMPTY = new Rows(new long[0], new String[0], new long[0], new String[0]);
+
+        final long[] ids;
+        final String[] names;
+        final long[] parentIds;
+        final String[] codes;
+
+        private Rows(long[] ids, String[] names, long[] parentIds, String[] codes) {
+            this.ids = ids;
+            this.names = names;
+            this.parentIds = parentIds;
+            this.codes = codes;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        /**
+         * Returns rows without the rows of removedIds and with the given rows added.
+         */
+        Rows replace(Set<Long> removedIds, Rows added) {
+            if (removedIds.isEmpty() && added.size() == 0) {
+                return this;
+            }
+            Builder builder = new Builder(size() + added.size());
+            int a = 0;
+            for (int i = 0; i < size(); i++) {
+                while (a < added.size() && added.ids[a] < ids[i]) {
+                    builder.add(added, a++);
+                }
+                if (!removedIds.contains(ids[i]) && !(a < added.size() && added.ids[a] == ids[i])) {
+                    builder.add(this, i);
+                }
+            }
+            while (a < added.size()) {
+                builder.add(added, a++);
+            }
+            return builder.build();
+        }
+
+        /**
+         * Returns rows whose parent id is in the sorted parentIds array.
+         */
+        Rows retainParents(long[] sortedParentIds) {
+            Builder builder = null;
+            for (int i = 0; i < size(); i++) {
+                boolean retained = Arrays.binarySearch(sortedParentIds, parentIds[i]) >= 0;
+                if (!retained && builder == null) {
+                    builder = new Builder(size());
+                    for (int j = 0; j < i; j++) {
+                        builder.add(this, j);
+                    }
+                } else if (retained && builder != null) {
+                    builder.add(this, i);
+                }
+            }
+            return builder == null ? this : builder.build();
+        }
+
+        static Builder builder() {
+            return new Builder(16);
+        }
+
+        static final class Builder {
+            private long[] ids;
+            private String[] names;
+            private long[] parentIds;
+            private String[] codes;
+            private int size;
+
+            private Builder(int capacity) {
+                ids = new long[capacity];
+                names = new String[capacity];
+                parentIds = new long[capacity];
+                codes = new String[capacity];
+            }
+
+            Builder add(long id, String name, long parentId, String code) {
+                if (size == ids.length) {
+                    int capacity = Math.max(16, size * 2);
+                    ids = Arrays.copyOf(ids, capacity);
+                    names = Arrays.copyOf(names, capacity);
+                    parentIds = Arrays.copyOf(parentIds, capacity);
+                    codes = Arrays.copyOf(codes, capacity);
+                }
+                ids[size] = id;
+                names[size] = name;
+                parentIds[size] = parentId;
+                codes[size] = code;
+                size++;
+                return this;
+            }
+
+            private void add(Rows rows, int i) {
+                add(rows.ids[i], rows.names[i], rows.parentIds[i], rows.codes[i]);
+            }
+
+            Rows build() {
+                Rows rows = new Rows(Arrays.copyOf(ids, size), Arrays.copyOf(names, size),
+                        Arrays.copyOf(parentIds, size), Arrays.copyOf(codes, size));
+                for (int i = 1; i < size; i++) {
+                    if (ids[i - 1] > ids[i]) {
+                        return rows.sorted();
+                    }
+                }
+                return rows;
+            }
+        }
+
+        private Rows sorted() {
+            int[] order = IntStream.range(0, size()).boxed()
+                    .sorted(Comparator.comparingLong(i -> ids[i]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            Builder builder = new Builder(size());
+            for (int i : order) {
+                builder.add(this, i);
+            }
+            return builder.build();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package kz.hustle.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the in-memory snapshot of countries, regions and cities used by the read methods of CountryService,
+ * RegionService and CityService when geo.snapshot.enabled is set. The snapshot is loaded when the application starts
+ * and replaced by an updated copy after every committed change, readers get the current snapshot without locking.
+ */
+@Service
+public class GeoSnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(GeoSnapshotService.class);
+
+    private static final String COUNTRIES = "SELECT id, name, country_code FROM country";
+    private static final String REGIONS = "SELECT id, name, country_id FROM region";
+    private static final String CITIES = "SELECT id, name, region_id FROM city";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readTransaction;
+    @Value("${geo.snapshot.enabled:false}")
+    private boolean enabled;
+    private volatile GeoSnapshot snapshot;
+
+    public GeoSnapshotService(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        //Events are handled after commit, when the connection of the committed transaction is still bound to the thread
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    /**
+     * @return current snapshot, or null if the snapshot is disabled or not loaded yet
+     */
+    GeoSnapshot current() {
+        return snapshot;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        if (!enabled) {
+            return;
+        }
+        long startedAt = System.nanoTime();
+        GeoSnapshot loaded = new GeoSnapshot(
+                query(COUNTRIES + " ORDER BY id", Map.of(), true),
+                query(REGIONS + " ORDER BY id", Map.of(), false),
+                query(CITIES + " ORDER BY id", Map.of(), false));
+        snapshot = loaded;
+        log.info("Geo snapshot loaded in {} ms: {} countries, {} regions, {} cities", (System.nanoTime() - startedAt) / 1_000_000,
+                loaded.countryCount(), loaded.regionCount(), loaded.cityCount());
+    }
+
+    //Changed rows are read again after commit, so the result does not depend on the order in which events of
+    //concurrent transactions are handled
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onGeoDataChanged(GeoDataChangedEvent event) {
+        GeoSnapshot current = snapshot;
+        if (current == null) {
+            //Disabled or not loaded yet, in the latter case the changes will be read by the initial load
+            return;
+        }
+        readTransaction.executeWithoutResult(status -> {
+            if (event.reloadAll()) {
+                load();
+            } else {
+                snapshot = current.withChanges(event,
+                        queryByIds(COUNTRIES, event.countryIds(), true),
+                        queryByIds(REGIONS, event.regionIds(), false),
+                        queryByIds(CITIES, event.cityIds(), false));
+            }
+        });
+    }
+
+    private GeoSnapshot.Rows queryByIds(String sql, Set<Long> ids, boolean countries) {
+        if (ids.isEmpty()) {
+            return GeoSnapshot.Rows.EMPTY;
+        }
+        return query(sql + " WHERE id IN (:ids)", Map.of("ids", ids), countries);
+    }
+
+    private GeoSnapshot.Rows query(String sql, Map<String, ?> params, boolean countries) {
+        GeoSnapshot.Rows.Builder builder = GeoSnapshot.Rows.builder();
+        jdbcTemplate.query(sql, params, rs -> {
+            if (countries) {
+                builder.add(rs.getLong(1), rs.getString(2), 0, rs.getString(3));
+            } else {
+                builder.add(rs.getLong(1), rs.getString(2), rs.getLong(3), null);
+            }
+        });
+        return builder.build();
+    }
+}
@@ -1,55 +1,66 @@
 package kz.hustle.service;
 
+import kz.hustle.dto.CursorPage;
 import kz.hustle.dto.RegionDTO;
 import kz.hustle.entity.Country;
 import kz.hustle.entity.Region;
 import kz.hustle.repository.CountryRepository;
 import kz.hustle.repository.RegionRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 public class RegionService {
     private final RegionRepository regionRepository;
     private final CountryRepository countryRepository;
+    private final GeoSnapshotService geoSnapshotService;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public RegionService(RegionRepository regionRepository, CountryRepository countryRepository) {
+    public RegionService(RegionRepository regionRepository, CountryRepository countryRepository,
+                         GeoSnapshotService geoSnapshotService, ApplicationEventPublisher eventPublisher) {
         this.regionRepository = regionRepository;
         this.countryRepository = countryRepository;
+        this.geoSnapshotService = geoSnapshotService;
+        this.eventPublisher = eventPublisher;
     }
 
-    @Transactional(readOnly = true)
-    public List<RegionDTO> getAllRegions() {
-        return regionRepository.findAll()
-                .stream()
-                .map(this::createDTO).collect(Collectors.toList());
+    //Read methods are not transactional, so reads served from the geo snapshot do not touch the database
+    public CursorPage<RegionDTO> getAllRegions(long afterId, int limit) {
+        GeoSnapshot snapshot = geoSnapshotService.current();
+        if (snapshot != null) {
+            return snapshot.getRegions(afterId, limit);
+        }
+        return CursorPage.of(regionRepository.findRegionDTOs(afterId, PageRequest.ofSize(limit + 1)), limit, RegionDTO::getRegionId);
     }
 
-    @Transactional(readOnly = true)
-    public List<RegionDTO> getRegionsByCountry(String countryParam) {
+    public CursorPage<RegionDTO> getRegionsByCountry(String countryParam, long afterId, int limit) {
+        GeoSnapshot snapshot = geoSnapshotService.current();
         Country country;
         if (isNumeric(countryParam)) {
-            country = countryRepository
-                    .findById(Long.parseLong(countryParam))
+            long countryId = Long.parseLong(countryParam);
+            country = (snapshot != null ? snapshot.getCountry(countryId) : countryRepository.findById(countryId))
                     .orElseThrow(() -> new IllegalArgumentException("Country with id " + countryParam + " not found."));
         } else {
-            country = countryRepository
-                    .findByName(countryParam)
+            country = (snapshot != null ? snapshot.getCountryByName(countryParam) : countryRepository.findByName(countryParam))
                     .orElseThrow(() -> new IllegalArgumentException("Country " + countryParam + " not found."));
         }
-        return regionRepository.findByCountry(country)
-                .stream()
-                .map(this::createDTO
-                )
-                .collect(Collectors.toList());
+        if (snapshot != null) {
+            return snapshot.getRegionsByCountry(country.getId(), afterId, limit);
+        }
+        return CursorPage.of(regionRepository.findRegionDTOsByCountry(country, afterId, PageRequest.ofSize(limit + 1)),
+                limit, RegionDTO::getRegionId);
     }
 
-    @Transactional
     public RegionDTO getRegionById(Long id) {
+        GeoSnapshot snapshot = geoSnapshotService.current();
+        if (snapshot != null) {
+            return snapshot.getRegion(id)
+                    .orElseThrow(() -> new IllegalArgumentException("Region with id " + id + " not found"));
+        }
         return createDTO(regionRepository
                 .findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Region with id " + id + " not found")));
@@ -57,7 +68,9 @@ public class RegionService {
 
     @Transactional
     public RegionDTO saveRegion(Region region) {
-        return createDTO(regionRepository.save(region));
+        Region saved = regionRepository.save(region);
+        eventPublisher.publishEvent(GeoDataChangedEvent.region(saved.getId()));
+        return createDTO(saved);
     }
 
     @Transactional
@@ -77,7 +90,9 @@ public class RegionService {
         region.setCountry(country);
 
         try {
-            return createDTO(regionRepository.save(region));
+            Region saved = regionRepository.save(region);
+            eventPublisher.publishEvent(GeoDataChangedEvent.of(country.getId(), saved.getId(), null));
+            return createDTO(saved);
         } catch (DataIntegrityViolationException e) {
             throw new RegionAlreadyExistsException("Region " + region.getName() + " already exists in " + country.getName());
         }
@@ -93,13 +108,16 @@ public class RegionService {
             region.setCountry(country);
         }
         region.setName(regionDTO.getRegionName());
-        return createDTO(regionRepository.save(region));
+        Region saved = regionRepository.save(region);
+        eventPublisher.publishEvent(GeoDataChangedEvent.region(id));
+        return createDTO(saved);
     }
 
     @Transactional
     public boolean deleteRegion(Long id) {
         if (regionRepository.existsById(id)) {
             regionRepository.deleteById(id);
+            eventPublisher.publishEvent(GeoDataChangedEvent.region(id));
             return true;
         }
         return false;
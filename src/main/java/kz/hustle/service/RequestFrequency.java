@@ -0,0 +1,64 @@
+package kz.hustle.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Approximate request counts per key for finding the most requested keys. Counts are halved by decay(), so recent
+ * requests weigh more than old ones, and keys that are no longer requested are dropped. At most maxKeys keys are
+ * counted, requests for other keys are ignored until decay() drops some.
+ */
+public class RequestFrequency<K> {
+
+    private final ConcurrentMap<K, LongAdder> counts = new ConcurrentHashMap<>();
+    private final int maxKeys;
+
+    public RequestFrequency(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    public void record(K key) {
+        LongAdder count = counts.get(key);
+        if (count == null) {
+            if (counts.size() >= maxKeys) {
+                return;
+            }
+            count = counts.computeIfAbsent(key, ignored -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * @return up to limit keys with the highest counts, the most requested first
+     */
+    public List<K> top(int limit) {
+        List<Map.Entry<K, Long>> snapshot = new ArrayList<>(counts.size());
+        counts.forEach((key, count) -> snapshot.add(Map.entry(key, count.sum())));
+        snapshot.sort(Map.Entry.<K, Long>comparingByValue(Comparator.reverseOrder()));
+        List<K> result = new ArrayList<>(Math.min(limit, snapshot.size()));
+        for (Map.Entry<K, Long> entry : snapshot) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(entry.getKey());
+        }
+        return result;
+    }
+
+    //Requests recorded concurrently with decay() may be lost, the counts are only used to rank keys
+    public void decay() {
+        counts.forEach((key, count) -> {
+            long halved = count.sumThenReset() / 2;
+            if (halved > 0) {
+                count.add(halved);
+            } else {
+                counts.remove(key, count);
+            }
+        });
+    }
+}
@@ -0,0 +1,60 @@
+package kz.hustle.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Limits retries to a share of requests, so retries can not multiply the load on a dependency that is already failing.
+ * Every request adds ratio tokens to the budget and every retry takes one token. The budget holds at most maxTokens,
+ * which is also the number of retries allowed before any requests are made.
+ */
+public class RetryBudget {
+
+    private final double ratio;
+    private final double maxTokens;
+    private double tokens;
+    private final Counter allowed;
+    private final Counter denied;
+
+    public RetryBudget(double ratio, int maxTokens, MeterRegistry meterRegistry) {
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+        Gauge.builder("weather.api.retry.budget", this, RetryBudget::getTokens)
+                .description("Retries currently allowed by the retry budget")
+                .register(meterRegistry);
+        this.allowed = retryCounter(meterRegistry, "allowed");
+        this.denied = retryCounter(meterRegistry, "denied");
+    }
+
+    public synchronized void onRequest() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    /**
+     * @return true if the retry is allowed
+     */
+    public boolean tryRetry() {
+        boolean result;
+        synchronized (this) {
+            result = tokens >= 1;
+            if (result) {
+                tokens -= 1;
+            }
+        }
+        (result ? allowed : denied).increment();
+        return result;
+    }
+
+    public synchronized double getTokens() {
+        return tokens;
+    }
+
+    private static Counter retryCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("weather.api.retries")
+                .description("Retries of failed Weather API requests")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,67 @@
+package kz.hustle.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonEOFException;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Location from a Weather API search response. Only the fields used by the application are kept,
+ * missing text fields are empty strings.
+ */
+public record SearchLocation(Integer id, String name, String region, String country, double lat, double lon) {
+
+    /**
+     * Reads a search response with the streaming parser: fields of the locations are read one by one, other fields
+     * (e.g. url) are skipped, no JSON tree is built.
+     *
+     * @throws MismatchedInputException if the response is not a list of locations, e.g. an error response
+     * @throws JsonEOFException if the response is truncated
+     */
+    public static List<SearchLocation> readList(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw MismatchedInputException.from(parser, List.class, "Search response is not a list of locations");
+        }
+        List<SearchLocation> result = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+            result.add(read(parser));
+        }
+        if (token != JsonToken.END_ARRAY) {
+            throw MismatchedInputException.from(parser, SearchLocation.class, "Search response item is not a location");
+        }
+        return result;
+    }
+
+    private static SearchLocation read(JsonParser parser) throws IOException {
+        Integer id = null;
+        String name = "";
+        String region = "";
+        String country = "";
+        double lat = 0;
+        double lon = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value.isStructStart()) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "id" -> id = value == JsonToken.VALUE_NULL ? null : parser.getValueAsInt();
+                case "name" -> name = parser.getValueAsString("");
+                case "region" -> region = parser.getValueAsString("");
+                case "country" -> country = parser.getValueAsString("");
+                case "lat" -> lat = parser.getValueAsDouble();
+                case "lon" -> lon = parser.getValueAsDouble();
+                default -> {
+                }
+            }
+        }
+        return new SearchLocation(id, name, region, country, lat, lon);
+    }
+}
@@ -0,0 +1,62 @@
+package kz.hustle.service;
+
+import java.time.Duration;
+
+/**
+ * Token bucket rate limiter. The bucket holds up to capacity tokens and is refilled continuously with capacity tokens
+ * per refill period. Permits are reserved ahead: a caller that can not be served from the tokens in the bucket gets
+ * the time to wait until its permits are refilled, so callers are served in order without blocking threads.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    //Negative when permits are reserved ahead
+    private double tokens;
+    private long updatedAt;
+
+    public TokenBucket(int capacity, Duration refillPeriod) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.tokensPerNano = capacity / (double) refillPeriod.toNanos();
+        this.tokens = capacity;
+        this.updatedAt = System.nanoTime();
+    }
+
+    /**
+     * Reserves permits if they are available within maxWait.
+     *
+     * @return nanoseconds to wait before the permits can be used, 0 if they can be used now, or -1 if the permits are
+     * not available within maxWait, in which case nothing is reserved
+     */
+    public synchronized long reserve(int permits, Duration maxWait) {
+        refill();
+        double missing = permits - tokens;
+        long wait = missing <= 0 ? 0 : (long) Math.ceil(missing / tokensPerNano);
+        if (wait > maxWait.toNanos()) {
+            return -1;
+        }
+        tokens -= permits;
+        return wait;
+    }
+
+    /**
+     * @return tokens in the bucket, negative if permits are reserved ahead
+     */
+    public synchronized double available() {
+        refill();
+        return tokens;
+    }
+
+    public int getCapacity() {
+        return (int) capacity;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - updatedAt) * tokensPerNano);
+        updatedAt = now;
+    }
+}
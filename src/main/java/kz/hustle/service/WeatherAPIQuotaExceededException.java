@@ -0,0 +1,9 @@
+package kz.hustle.service;
+
+import java.io.IOException;
+
+public class WeatherAPIQuotaExceededException extends IOException {
+    public WeatherAPIQuotaExceededException(String message) {
+        super(message);
+    }
+}
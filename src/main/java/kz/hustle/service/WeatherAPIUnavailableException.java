@@ -0,0 +1,9 @@
+package kz.hustle.service;
+
+import java.io.IOException;
+
+public class WeatherAPIUnavailableException extends IOException {
+    public WeatherAPIUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,131 @@
+package kz.hustle.service;
+
+import kz.hustle.entity.WeatherApiLocation;
+import kz.hustle.entity.WeatherApiSearch;
+import kz.hustle.repository.WeatherApiLocationRepository;
+import kz.hustle.repository.WeatherApiSearchRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Local copy of weatherapi.com search results, filled from search responses and stored in the database.
+ * Lookups by name are answered from it while the stored result is younger than weatherapi.gazetteer.ttl, so only
+ * names that were never searched or whose result is stale are sent to the search API.
+ * The gazetteer is an optimization: database errors are logged and treated as a miss.
+ */
+@Service
+public class WeatherApiGazetteer {
+
+    private static final Logger log = LoggerFactory.getLogger(WeatherApiGazetteer.class);
+
+    private final WeatherApiLocationRepository locationRepository;
+    private final WeatherApiSearchRepository searchRepository;
+    private final TransactionTemplate transactionTemplate;
+    @Value("${weatherapi.gazetteer.ttl:30d}")
+    private Duration ttl;
+
+    public WeatherApiGazetteer(WeatherApiLocationRepository locationRepository, WeatherApiSearchRepository searchRepository,
+                               TransactionTemplate transactionTemplate) {
+        this.locationRepository = locationRepository;
+        this.searchRepository = searchRepository;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * @return id of a known location with exactly the same name, region and country
+     */
+    public Optional<Integer> findLocationId(String name, String region, String country) {
+        if (name == null || region == null || country == null) {
+            return Optional.empty();
+        }
+        try {
+            List<WeatherApiLocation> locations = locationRepository.findByNameAndRegionAndCountryAndUpdatedAtAfter(
+                    name, region, country, freshAfter());
+            return locations.isEmpty() ? Optional.empty() : Optional.of(locations.get(0).getId());
+        } catch (DataAccessException e) {
+            log.warn("Weather API location lookup failed: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Returns the stored search result for the name, locations are in the order of the search API response.
+     */
+    public Optional<List<SearchLocation>> findSearch(String name) {
+        try {
+            Optional<WeatherApiSearch> search = searchRepository.findById(key(name))
+                    .filter(found -> found.getSearchedAt().isAfter(freshAfter()));
+            if (search.isEmpty()) {
+                return Optional.empty();
+            }
+            Map<Integer, WeatherApiLocation> locations = new HashMap<>();
+            for (WeatherApiLocation location : locationRepository.findAllById(search.get().getLocationIds())) {
+                locations.put(location.getId(), location);
+            }
+            List<SearchLocation> result = new ArrayList<>(search.get().getLocationIds().size());
+            for (Integer id : search.get().getLocationIds()) {
+                WeatherApiLocation location = locations.get(id);
+                if (location == null) {
+                    return Optional.empty();
+                }
+                result.add(new SearchLocation(location.getId(), location.getName(), location.getRegion(),
+                        location.getCountry(), location.getLat(), location.getLon()));
+            }
+            return Optional.of(result);
+        } catch (DataAccessException e) {
+            log.warn("Weather API search lookup failed: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores the search API response for the name. Responses with locations without id are ignored, and so are empty
+     * responses: the location may be added to Weather API later, or the search may have failed upstream.
+     */
+    public void saveSearch(String name, List<SearchLocation> response) {
+        if (response.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        List<WeatherApiLocation> locations = new ArrayList<>(response.size());
+        List<Integer> ids = new ArrayList<>(response.size());
+        for (SearchLocation location : response) {
+            if (location.id() == null) {
+                return;
+            }
+            locations.add(new WeatherApiLocation(location.id(), location.name(), location.region(), location.country(),
+                    location.lat(), location.lon(), now));
+            ids.add(location.id());
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                locationRepository.saveAll(locations);
+                searchRepository.save(new WeatherApiSearch(key(name), ids, now));
+            });
+        } catch (DataAccessException e) {
+            //E.g. a concurrent search for the same name has stored its result first
+            log.debug("Weather API search result for '{}' is not stored: {}", name, e.getMessage());
+        }
+    }
+
+    private Instant freshAfter() {
+        return Instant.now().minus(ttl);
+    }
+
+    private static String key(String name) {
+        return name.strip().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,194 @@
+package kz.hustle.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accounts Weather API calls against the plan limits before they are sent.
+ * - Per-minute limit: every endpoint (search, current, forecast) has its own token bucket. A call that finds the bucket
+ * empty waits for a token, at most weatherapi.rate-limit.max-wait, and is rejected if it would have to wait longer.
+ * - Monthly quota: calls are counted per calendar month (UTC), calls above weatherapi.quota.monthly are rejected.
+ * Rejected calls complete with WeatherAPIQuotaExceededException, cached responses are returned instead where available.
+ * The monthly count is kept in memory, calls made before the application started are not counted.
+ */
+@Component
+public class WeatherApiQuotaGovernor {
+
+    private final Map<String, TokenBucket> buckets = new HashMap<>();
+    private final Map<String, Counter> delayed = new HashMap<>();
+    private final Map<String, Counter> rejected = new HashMap<>();
+    private final Duration maxWait;
+    private final long monthlyQuota;
+    private YearMonth month;
+    private long usedThisMonth;
+
+    public WeatherApiQuotaGovernor(@Value("${weatherapi.rate-limit.search.per-minute:600}") int searchPerMinute,
+                                   @Value("${weatherapi.rate-limit.current.per-minute:600}") int currentPerMinute,
+                                   @Value("${weatherapi.rate-limit.forecast.per-minute:600}") int forecastPerMinute,
+                                   @Value("${weatherapi.rate-limit.max-wait:2s}") Duration maxWait,
+                                   @Value("${weatherapi.quota.monthly:1000000}") long monthlyQuota,
+                                   MeterRegistry meterRegistry) {
+        this.maxWait = maxWait;
+        this.monthlyQuota = monthlyQuota;
+        this.month = YearMonth.now(ZoneOffset.UTC);
+        addBucket("search", searchPerMinute, meterRegistry);
+        addBucket("current", currentPerMinute, meterRegistry);
+        addBucket("forecast", forecastPerMinute, meterRegistry);
+        Gauge.builder("weather.api.quota.used", this, WeatherApiQuotaGovernor::getUsedThisMonth)
+                .description("Weather API calls made this month")
+                .register(meterRegistry);
+        Gauge.builder("weather.api.quota.remaining", this, WeatherApiQuotaGovernor::getRemainingThisMonth)
+                .description("Weather API calls left in the monthly quota, NaN if there is no monthly quota")
+                .register(meterRegistry);
+        Gauge.builder("weather.api.quota.projected", this, WeatherApiQuotaGovernor::getProjectedMonthlyUsage)
+                .description("Weather API calls by the end of the month at the average rate of the month so far")
+                .register(meterRegistry);
+        Gauge.builder("weather.api.quota.exhaustion", this, WeatherApiQuotaGovernor::getSecondsToExhaustion)
+                .description("Seconds until the monthly quota is used up at the average rate of the month so far, "
+                        + "NaN if there is no monthly quota")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Takes the given number of calls of the endpoint from the limits.
+     *
+     * @return future completed when the calls may be sent
+     */
+    public CompletableFuture<Void> acquire(String endpoint, int calls) {
+        //Checked first: per-minute permits can not be given back to the bucket, monthly calls can
+        if (!tryUseMonthly(calls)) {
+            return CompletableFuture.failedFuture(new WeatherAPIQuotaExceededException(
+                    "Weather API monthly call quota is used up."));
+        }
+        TokenBucket bucket = buckets.get(endpoint);
+        long wait = bucket == null ? 0 : bucket.reserve(calls, maxWait);
+        if (wait < 0) {
+            releaseMonthly(calls);
+            rejected.get(endpoint).increment();
+            return CompletableFuture.failedFuture(new WeatherAPIQuotaExceededException(
+                    "Weather API per-minute call limit is reached. Try again later."));
+        }
+        if (wait == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        delayed.get(endpoint).increment();
+        return CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * @return per-minute call limit of the endpoint, 0 if the endpoint is not limited
+     */
+    public int getPerMinuteLimit(String endpoint) {
+        TokenBucket bucket = buckets.get(endpoint);
+        return bucket == null ? 0 : bucket.getCapacity();
+    }
+
+    /**
+     * Calls of the endpoint that can be made now without making other calls wait, if at most the given share of
+     * the per-minute limit is used for them: the calls above (1 - share) of the limit that are available in the bucket.
+     */
+    public int getSpareCalls(String endpoint, double share) {
+        TokenBucket bucket = buckets.get(endpoint);
+        if (bucket == null) {
+            return 0;
+        }
+        double spare = bucket.available() - bucket.getCapacity() * (1 - share);
+        return spare <= 0 ? 0 : (int) spare;
+    }
+
+    public synchronized long getUsedThisMonth() {
+        rollMonth();
+        return usedThisMonth;
+    }
+
+    /**
+     * @return calls by the end of the month if they continue at the average rate of the month so far
+     */
+    public synchronized double getProjectedMonthlyUsage() {
+        rollMonth();
+        double elapsed = secondsSinceMonthStart();
+        double total = Duration.ofDays(month.lengthOfMonth()).toSeconds();
+        return elapsed <= 0 ? usedThisMonth : usedThisMonth * total / elapsed;
+    }
+
+    /**
+     * @return calls left in the monthly quota, NaN if there is no monthly quota
+     */
+    public synchronized double getRemainingThisMonth() {
+        rollMonth();
+        return monthlyQuota > 0 ? Math.max(monthlyQuota - usedThisMonth, 0) : Double.NaN;
+    }
+
+    /**
+     * @return seconds until the monthly quota is used up at the average rate of the month so far, NaN if no calls
+     * were made this month or there is no monthly quota
+     */
+    public synchronized double getSecondsToExhaustion() {
+        rollMonth();
+        if (usedThisMonth == 0 || monthlyQuota <= 0) {
+            return Double.NaN;
+        }
+        double rate = usedThisMonth / Math.max(secondsSinceMonthStart(), 1);
+        return Math.max(monthlyQuota - usedThisMonth, 0) / rate;
+    }
+
+    private synchronized boolean tryUseMonthly(int calls) {
+        rollMonth();
+        if (monthlyQuota > 0 && usedThisMonth + calls > monthlyQuota) {
+            return false;
+        }
+        usedThisMonth += calls;
+        return true;
+    }
+
+    private synchronized void releaseMonthly(int calls) {
+        rollMonth();
+        usedThisMonth = Math.max(usedThisMonth - calls, 0);
+    }
+
+    private void rollMonth() {
+        YearMonth now = YearMonth.now(ZoneOffset.UTC);
+        if (!now.equals(month)) {
+            month = now;
+            usedThisMonth = 0;
+        }
+    }
+
+    private double secondsSinceMonthStart() {
+        Instant start = month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+        return Duration.between(start, Instant.now()).toMillis() / 1000.0;
+    }
+
+    private void addBucket(String endpoint, int perMinute, MeterRegistry meterRegistry) {
+        TokenBucket bucket = new TokenBucket(perMinute, Duration.ofMinutes(1));
+        buckets.put(endpoint, bucket);
+        Gauge.builder("weather.api.rate-limit.available", bucket, TokenBucket::available)
+                .description("Calls that can be sent now without waiting")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        delayed.put(endpoint, rateLimitCounter(meterRegistry, endpoint, "delayed"));
+        rejected.put(endpoint, rateLimitCounter(meterRegistry, endpoint, "rejected"));
+    }
+
+    private static Counter rateLimitCounter(MeterRegistry meterRegistry, String endpoint, String result) {
+        return Counter.builder("weather.api.rate-limit.calls")
+                .description("Weather API calls held back by the per-minute limit")
+                .tag("endpoint", endpoint)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
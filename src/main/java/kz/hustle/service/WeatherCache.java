@@ -0,0 +1,150 @@
+package kz.hustle.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Bounded in-memory cache for Weather API responses.
+ * - Entry younger than TTL is returned as is.
+ * - Entry older than TTL but still within the grace period is returned immediately, and a single background
+ * refresh is started for the key.
+ * - Older entries are loaded by the caller. If loading fails or returns a value that is not cacheable (an error response),
+ * an entry younger than TTL + grace + staleIfError is returned instead.
+ * - Older entries are evicted.
+ */
+public class WeatherCache<K, V> {
+
+    private static final Logger log = LoggerFactory.getLogger(WeatherCache.class);
+
+    private record Entry<V>(V value, long loadedAt) {
+    }
+
+    private final String name;
+    private final Cache<K, Entry<V>> cache;
+    private final long ttlNanos;
+    private final long graceNanos;
+    private final Predicate<V> cacheable;
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter staleHits;
+    private final Counter staleOnError;
+
+    public WeatherCache(String name, Duration ttl, Duration grace, Duration staleIfError, long maximumSize,
+                        Predicate<V> cacheable, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.ttlNanos = ttl.toNanos();
+        this.graceNanos = grace.toNanos();
+        this.cacheable = cacheable;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl.plus(grace).plus(staleIfError))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+        this.hits = requestCounter(meterRegistry, "hit");
+        this.misses = requestCounter(meterRegistry, "miss");
+        this.staleHits = requestCounter(meterRegistry, "stale");
+        this.staleOnError = requestCounter(meterRegistry, "stale-on-error");
+    }
+
+    public CompletableFuture<V> get(K key, Function<K, CompletableFuture<V>> loader) {
+        Entry<V> entry = cache.getIfPresent(key);
+        if (entry != null) {
+            long age = System.nanoTime() - entry.loadedAt();
+            if (age < ttlNanos) {
+                hits.increment();
+                return CompletableFuture.completedFuture(entry.value());
+            }
+            if (age < ttlNanos + graceNanos) {
+                staleHits.increment();
+                refreshInBackground(key, loader);
+                return CompletableFuture.completedFuture(entry.value());
+            }
+        }
+        misses.increment();
+        CompletableFuture<V> loaded = load(key, loader);
+        if (entry == null) {
+            return loaded;
+        }
+        return loaded.handle((value, ex) -> {
+            if (ex == null && cacheable.test(value)) {
+                return value;
+            }
+            staleOnError.increment();
+            log.debug("Returning stale {} cache entry {}, loading failed: {}", name, key,
+                    ex != null ? ex.getMessage() : value);
+            return entry.value();
+        });
+    }
+
+    public void invalidate(K key) {
+        cache.invalidate(key);
+    }
+
+    /**
+     * @return true if the key has an entry that stays younger than TTL for at least the given time
+     */
+    public boolean isFreshFor(K key, Duration time) {
+        Entry<V> entry = cache.getIfPresent(key);
+        return entry != null && System.nanoTime() - entry.loadedAt() + time.toNanos() < ttlNanos;
+    }
+
+    /**
+     * Loads the value of the key in the background and replaces the entry, unless a refresh of the key is in progress.
+     *
+     * @return true if the refresh is started
+     */
+    public boolean refresh(K key, Function<K, CompletableFuture<V>> loader) {
+        return refreshInBackground(key, loader);
+    }
+
+    private CompletableFuture<V> load(K key, Function<K, CompletableFuture<V>> loader) {
+        return loader.apply(key).thenApply(value -> {
+            if (cacheable.test(value)) {
+                cache.put(key, new Entry<>(value, System.nanoTime()));
+            }
+            return value;
+        });
+    }
+
+    private boolean refreshInBackground(K key, Function<K, CompletableFuture<V>> loader) {
+        //Only one refresh per key at a time, other callers keep getting the stale value
+        if (!refreshing.add(key)) {
+            return false;
+        }
+        CompletableFuture<V> refresh;
+        try {
+            refresh = load(key, loader);
+        } catch (RuntimeException e) {
+            refresh = CompletableFuture.failedFuture(e);
+        }
+        refresh.whenComplete((value, ex) -> {
+            refreshing.remove(key);
+            if (ex != null) {
+                log.warn("Background refresh of {} cache entry {} failed: {}", name, key, ex.getMessage());
+            }
+        });
+        return true;
+    }
+
+    private Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("weather.cache.requests")
+                .description("Weather API response cache lookups")
+                .tag("cache", name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
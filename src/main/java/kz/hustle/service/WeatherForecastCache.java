@@ -0,0 +1,187 @@
+package kz.hustle.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+
+/**
+ * Bounded in-memory cache for Weather API forecasts, keyed by location id. One entry per location holds the longest
+ * forecast fetched for it, requests for fewer days are answered by taking the first days of "forecastday".
+ * - A request for more days than the entry has replaces the entry with a forecast for the requested days.
+ * - Requests for fewer than fetchDays days fetch fetchDays days, so that later longer requests are answered from the entry.
+ * - An entry expires after TTL or at the next midnight in the time zone of the location (location.tz_id of
+ * the response), whichever comes first: after midnight its first day is in the past.
+ * Error responses are not cached.
+ */
+public class WeatherForecastCache {
+
+    private static class Entry {
+        private final WeatherPayload payload;
+        private final int days;
+        private final Instant expiresAt;
+        //Expires at the local midnight of the location, a forecast loaded before then would start with the same day
+        private final boolean endsAtMidnight;
+        //Shorter forecasts taken from the payload, by number of days
+        private final ConcurrentMap<Integer, WeatherPayload> slices = new ConcurrentHashMap<>();
+
+        private Entry(WeatherPayload payload, int days, Instant expiresAt, boolean endsAtMidnight) {
+            this.payload = payload;
+            this.days = days;
+            this.expiresAt = expiresAt;
+            this.endsAtMidnight = endsAtMidnight;
+        }
+
+        private WeatherPayload slice(int requestedDays) {
+            if (requestedDays >= days) {
+                return payload;
+            }
+            return slices.computeIfAbsent(requestedDays, key -> WeatherForecastCache.slice(payload, key));
+        }
+    }
+
+    private final Cache<Integer, Entry> cache;
+    private final Duration ttl;
+    private final int fetchDays;
+    private final Counter hits;
+    private final Counter slicedHits;
+    private final Counter misses;
+
+    public WeatherForecastCache(Duration ttl, int fetchDays, long maximumSize, MeterRegistry meterRegistry) {
+        this.ttl = ttl;
+        this.fetchDays = fetchDays;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "weather-forecast");
+        this.hits = requestCounter(meterRegistry, "hit");
+        this.slicedHits = requestCounter(meterRegistry, "slice");
+        this.misses = requestCounter(meterRegistry, "miss");
+    }
+
+    /**
+     * @param loader loads the forecast for the location id and number of days
+     */
+    public CompletableFuture<WeatherPayload> get(Integer id, int days,
+                                                 BiFunction<Integer, Integer, CompletableFuture<WeatherPayload>> loader) {
+        if (id == null || days < 1) {
+            //Nothing to cache, Weather API responds with an error or its default
+            return loader.apply(id, days);
+        }
+        Entry entry = currentEntry(id);
+        if (entry != null && entry.days >= days) {
+            (entry.days == days ? hits : slicedHits).increment();
+            return CompletableFuture.completedFuture(entry.slice(days));
+        }
+        misses.increment();
+        return load(id, days, Math.max(days, fetchDays), loader);
+    }
+
+    /**
+     * @return true if the location has an entry with at least the given number of days that does not expire within
+     * the given time, or that expires at the local midnight, when loading it again would not give a newer forecast
+     */
+    public boolean isFreshFor(Integer id, int days, Duration time) {
+        Entry entry = currentEntry(id);
+        return entry != null && entry.days >= days
+                && (entry.endsAtMidnight || Instant.now().plus(time).isBefore(entry.expiresAt));
+    }
+
+    /**
+     * Loads the forecast for the location and replaces the entry. At least as many days as the entry has are loaded.
+     */
+    public CompletableFuture<WeatherPayload> refresh(Integer id, int days,
+                                                     BiFunction<Integer, Integer, CompletableFuture<WeatherPayload>> loader) {
+        Entry entry = currentEntry(id);
+        int loadDays = Math.max(Math.max(days, fetchDays), entry == null ? 0 : entry.days);
+        return load(id, days, loadDays, loader);
+    }
+
+    public void invalidate(Integer id) {
+        cache.invalidate(id);
+    }
+
+    private Entry currentEntry(Integer id) {
+        Entry entry = cache.getIfPresent(id);
+        if (entry != null && Instant.now().isAfter(entry.expiresAt)) {
+            cache.asMap().remove(id, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private CompletableFuture<WeatherPayload> load(Integer id, int days, int loadDays,
+                                                   BiFunction<Integer, Integer, CompletableFuture<WeatherPayload>> loader) {
+        return loader.apply(id, loadDays).thenApply(payload -> {
+            if (payload.isError()) {
+                return payload;
+            }
+            Entry loaded = newEntry(payload, loadDays);
+            cache.asMap().merge(id, loaded, (current, candidate) -> current.days > candidate.days
+                    && Instant.now().isBefore(current.expiresAt) ? current : candidate);
+            return loaded.slice(days);
+        });
+    }
+
+    private Entry newEntry(WeatherPayload payload, int days) {
+        Instant now = Instant.now();
+        ZoneId zone = ZoneOffset.UTC;
+        String tzId = payload.json().path("location").path("tz_id").asText("");
+        if (!tzId.isEmpty()) {
+            try {
+                zone = ZoneId.of(tzId);
+            } catch (DateTimeException e) {
+                //Unknown zone, UTC midnight is used
+            }
+        }
+        Instant midnight = LocalDate.now(zone).plusDays(1).atStartOfDay(zone).toInstant();
+        Instant expiresAfterTtl = now.plus(ttl);
+        return midnight.isBefore(expiresAfterTtl)
+                ? new Entry(payload, days, midnight, true)
+                : new Entry(payload, days, expiresAfterTtl, false);
+    }
+
+    //The copy shares unchanged nodes with the cached forecast, payloads are read-only
+    static WeatherPayload slice(WeatherPayload payload, int days) {
+        JsonNode json = payload.json();
+        JsonNode forecastDays = json.path("forecast").path("forecastday");
+        if (!json.isObject() || !forecastDays.isArray() || forecastDays.size() <= days) {
+            return payload;
+        }
+        ObjectNode result = JsonNodeFactory.instance.objectNode();
+        result.setAll((ObjectNode) json);
+        ObjectNode forecast = result.putObject("forecast");
+        forecast.setAll((ObjectNode) json.get("forecast"));
+        ArrayNode sliced = forecast.putArray("forecastday");
+        for (int i = 0; i < days; i++) {
+            sliced.add(forecastDays.get(i));
+        }
+        return WeatherPayload.of(result);
+    }
+
+    private Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("weather.cache.requests")
+                .description("Weather API response cache lookups")
+                .tag("cache", "weather-forecast")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,99 @@
+package kz.hustle.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Weather API response body as received, gzip-compressed if Weather API compressed it. The body can be sent to
+ * clients without parsing, the JSON tree is parsed only when a caller needs it and is kept for later callers.
+ */
+public final class WeatherPayload {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final byte[] body;
+    private final boolean gzipped;
+    private final boolean error;
+    private volatile JsonNode json;
+
+    private WeatherPayload(byte[] body, boolean gzipped, boolean error, JsonNode json) {
+        this.body = body;
+        this.gzipped = gzipped;
+        this.error = error;
+        this.json = json;
+    }
+
+    public static WeatherPayload of(HttpResponse<byte[]> response) {
+        return new WeatherPayload(response.body(), isGzipped(response), response.statusCode() >= 400, null);
+    }
+
+    /**
+     * Payload built by the application, e.g. a location split from a bulk response.
+     */
+    public static WeatherPayload of(JsonNode json) {
+        try {
+            return new WeatherPayload(objectMapper.writeValueAsBytes(json), false, json.has("error"), json);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static boolean isGzipped(HttpResponse<?> response) {
+        return response.headers().firstValue("Content-Encoding").map("gzip"::equalsIgnoreCase).orElse(false);
+    }
+
+    /**
+     * @return true if Weather API responded with an error, such payloads are not cached
+     */
+    public boolean isError() {
+        return error;
+    }
+
+    public boolean isGzipped() {
+        return gzipped;
+    }
+
+    /**
+     * @return body as received, do not modify
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    public byte[] getUncompressedBody() {
+        if (!gzipped) {
+            return body;
+        }
+        try (InputStream in = uncompressed(body, true)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public JsonNode json() {
+        JsonNode result = json;
+        if (result == null) {
+            try (InputStream in = uncompressed(body, gzipped)) {
+                result = objectMapper.readTree(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            json = result;
+        }
+        return result;
+    }
+
+    static InputStream uncompressed(byte[] body, boolean gzipped) throws IOException {
+        InputStream in = new ByteArrayInputStream(body);
+        return gzipped ? new GZIPInputStream(in) : in;
+    }
+}
@@ -0,0 +1,81 @@
+package kz.hustle.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Refreshes cached current weather and forecasts of the most requested locations before they expire, so clients
+ * requesting them are served from the cache. Runs every weatherapi.prewarm.interval and checks the top
+ * weatherapi.prewarm.top-locations locations of each endpoint, entries expiring within weatherapi.prewarm.lead are refreshed.
+ * Refreshes use at most weatherapi.prewarm.budget-share of the per-minute limit of the endpoint, and only calls that are
+ * available without making client requests wait.
+ */
+@Component
+@ConditionalOnProperty(name = "weatherapi.prewarm.enabled", havingValue = "true")
+public class WeatherPrewarmer {
+
+    private static final Logger log = LoggerFactory.getLogger(WeatherPrewarmer.class);
+
+    private final WeatherService weatherService;
+    private final WeatherApiQuotaGovernor quotaGovernor;
+    private final int topLocations;
+    private final Duration lead;
+    private final Duration interval;
+    private final double budgetShare;
+    private final Counter currentRefreshes;
+    private final Counter forecastRefreshes;
+
+    public WeatherPrewarmer(WeatherService weatherService, WeatherApiQuotaGovernor quotaGovernor, MeterRegistry meterRegistry,
+                            @Value("${weatherapi.prewarm.top-locations:100}") int topLocations,
+                            @Value("${weatherapi.prewarm.lead:1m}") Duration lead,
+                            @Value("${weatherapi.prewarm.interval:30s}") Duration interval,
+                            @Value("${weatherapi.prewarm.budget-share:0.2}") double budgetShare) {
+        if (budgetShare < 0 || budgetShare > 1) {
+            throw new IllegalArgumentException("Pre-warming budget share must be between 0 and 1: " + budgetShare);
+        }
+        this.weatherService = weatherService;
+        this.quotaGovernor = quotaGovernor;
+        this.topLocations = topLocations;
+        this.lead = lead;
+        this.interval = interval;
+        this.budgetShare = budgetShare;
+        this.currentRefreshes = refreshCounter(meterRegistry, "current");
+        this.forecastRefreshes = refreshCounter(meterRegistry, "forecast");
+    }
+
+    @Scheduled(initialDelayString = "${weatherapi.prewarm.interval:30s}", fixedDelayString = "${weatherapi.prewarm.interval:30s}")
+    public void prewarm() {
+        try {
+            int current = weatherService.prewarmCurrentWeather(topLocations, lead, callBudget("current"));
+            int forecast = weatherService.prewarmForecasts(topLocations, lead, callBudget("forecast"));
+            currentRefreshes.increment(current);
+            forecastRefreshes.increment(forecast);
+            if (current + forecast > 0) {
+                log.debug("Pre-warming started {} current weather and {} forecast refreshes", current, forecast);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Pre-warming failed: {}", e.getMessage());
+        }
+    }
+
+    //Share of the calls the per-minute limit allows in one interval, not more than can be made now without waiting
+    private int callBudget(String endpoint) {
+        double perInterval = budgetShare * quotaGovernor.getPerMinuteLimit(endpoint) * interval.toNanos() / Duration.ofMinutes(1).toNanos();
+        return Math.min((int) perInterval, quotaGovernor.getSpareCalls(endpoint, budgetShare));
+    }
+
+    private static Counter refreshCounter(MeterRegistry meterRegistry, String endpoint) {
+        return Counter.builder("weather.prewarm.refreshes")
+                .description("Cache refreshes started by pre-warming of the most requested locations")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+    }
+}
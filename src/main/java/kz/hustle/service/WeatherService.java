@@ -1,126 +1,514 @@
 package kz.hustle.service;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import kz.hustle.entity.City;
 import kz.hustle.repository.CityRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
 public class WeatherService {
 
+    private static final Logger log = LoggerFactory.getLogger(WeatherService.class);
+
+    private static final int MAX_TRACKED_LOCATIONS = 10_000;
+
+    private record ForecastRequest(Integer locationId, int days) {
+    }
+
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
     private final CityRepository cityRepository;
-    private static final String BASE_URL = "http://api.weatherapi.com/v1";
+    private final WeatherApiGazetteer gazetteer;
+    private final WeatherCache<Integer, WeatherPayload> currentWeatherCache;
+    private final WeatherForecastCache forecastCache;
+    private final ConcurrentMap<URI, CompletableFuture<HttpResponse<byte[]>>> inFlightRequests = new ConcurrentHashMap<>();
+    //Null unless weatherapi.bulk.enabled is set
+    private final BulkRequestBatcher<Integer, WeatherPayload> currentWeatherBatcher;
+    private final RetryBudget retryBudget;
+    private final WeatherApiQuotaGovernor quotaGovernor;
+    private final MeterRegistry meterRegistry;
+    //Database writes for Weather API responses, so they do not run on the threads completing HTTP responses
+    private final ThreadPoolTaskExecutor dbExecutor;
+    //By endpoint, e.g. "current", created on the first request to the endpoint
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    //Requests of clients by location, used to pre-warm the caches for the most requested locations
+    private final RequestFrequency<Integer> currentWeatherRequests = new RequestFrequency<>(MAX_TRACKED_LOCATIONS);
+    private final RequestFrequency<ForecastRequest> forecastRequests = new RequestFrequency<>(MAX_TRACKED_LOCATIONS);
+    @Value("${weatherapi.base-url:http://api.weatherapi.com/v1}")
+    private String BASE_URL;
     @Value("${weatherapi.key}")
     private String API_KEY;
+    @Value("${weatherapi.search.max-concurrency:8}")
+    private int searchMaxConcurrency;
+    @Value("${weatherapi.search.deadline:10s}")
+    private Duration searchDeadline;
+    @Value("${weatherapi.batch.max-cities:500}")
+    private int batchMaxCities;
+    @Value("${weatherapi.batch.max-concurrency:16}")
+    private int batchMaxConcurrency;
+    @Value("${weatherapi.batch.deadline:10s}")
+    private Duration batchDeadline;
+    @Value("${weatherapi.http.request-timeout:5s}")
+    private Duration requestTimeout;
+    @Value("${weatherapi.retry.max-attempts:3}")
+    private int retryMaxAttempts;
+    @Value("${weatherapi.retry.backoff:100ms}")
+    private Duration retryBackoff;
+    @Value("${weatherapi.retry.max-backoff:1s}")
+    private Duration retryMaxBackoff;
+    @Value("${weatherapi.circuit.failure-rate-threshold:50}")
+    private int circuitFailureRateThreshold;
+    @Value("${weatherapi.circuit.sliding-window-size:20}")
+    private int circuitSlidingWindowSize;
+    @Value("${weatherapi.circuit.minimum-calls:10}")
+    private int circuitMinimumCalls;
+    @Value("${weatherapi.circuit.open-duration:30s}")
+    private Duration circuitOpenDuration;
+    @Value("${weatherapi.circuit.half-open-calls:3}")
+    private int circuitHalfOpenCalls;
 
-    public WeatherService(CityRepository cityRepository) {
+    public WeatherService(CityRepository cityRepository, WeatherApiGazetteer gazetteer,
+                          WeatherCache<Integer, WeatherPayload> currentWeatherCache, WeatherForecastCache forecastCache,
+                          HttpClient httpClient,
+                          RetryBudget retryBudget, WeatherApiQuotaGovernor quotaGovernor, MeterRegistry meterRegistry,
+                          @Value("${weatherapi.bulk.enabled:false}") boolean bulkEnabled,
+                          @Value("${weatherapi.bulk.window:20ms}") Duration bulkWindow,
+                          @Value("${weatherapi.bulk.max-size:50}") int bulkMaxSize,
+                          @Value("${weatherapi.db.threads:4}") int dbThreads) {
         this.cityRepository = cityRepository;
-        this.httpClient = HttpClient.newHttpClient();
+        this.gazetteer = gazetteer;
+        this.currentWeatherCache = currentWeatherCache;
+        this.forecastCache = forecastCache;
+        this.httpClient = httpClient;
+        this.retryBudget = retryBudget;
+        this.quotaGovernor = quotaGovernor;
+        this.meterRegistry = meterRegistry;
         this.objectMapper = new ObjectMapper();
+        this.currentWeatherBatcher = bulkEnabled
+                ? new BulkRequestBatcher<>(bulkWindow, bulkMaxSize, this::fetchCurrentWeatherBulk)
+                : null;
+        this.dbExecutor = new ThreadPoolTaskExecutor();
+        this.dbExecutor.setCorePoolSize(dbThreads);
+        this.dbExecutor.setThreadNamePrefix("weatherapi-db-");
+        this.dbExecutor.setDaemon(true);
+        this.dbExecutor.initialize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dbExecutor.shutdown();
     }
 
     public JsonNode getCurrentWeatherByCityId(Long id) throws IOException, WeatherAPIForbiddenException, WeatherAPIUnauthorizedException {
+        return await(getCurrentWeatherByCityIdAsync(id));
+    }
+
+    /**
+     * Non-blocking variant of {@link #getCurrentWeatherByCityId(Long)}. Only the city lookup in the database is done
+     * on the calling thread, Weather API requests are sent asynchronously.
+     * Weather API errors complete the future exceptionally with the same exceptions as the blocking variant throws.
+     */
+    public CompletableFuture<JsonNode> getCurrentWeatherByCityIdAsync(Long id) {
+        return getCurrentWeatherPayloadByCityIdAsync(id).thenApply(WeatherPayload::json);
+    }
+
+    /**
+     * Same as {@link #getCurrentWeatherByCityIdAsync(Long)}, the response is returned as received from Weather API.
+     */
+    public CompletableFuture<WeatherPayload> getCurrentWeatherPayloadByCityIdAsync(Long id) {
         City city = cityRepository.findById(id).orElseThrow(() -> new RuntimeException("City not found"));
-        Integer weatherApiCityId = getIdFromSearchAPI(
+        return resolveWeatherApiCityIdAsync(city).thenCompose(this::getCurrentWeatherByWeatherApiCityIdAsync);
+    }
+
+    /**
+     * Current weather for many cities of the internal database. Cities are loaded with one query, cached responses are
+     * reused, and the rest is requested from Weather API concurrently, at most weatherapi.batch.max-concurrency at a time.
+     * A city that is not found, fails or does not get its weather within weatherapi.batch.deadline of the call, time
+     * waiting for the concurrency limit included, gets an entry with an "error" object instead of the weather, the other
+     * entries are not affected. Requests of the cities still waiting when the deadline passes are not sent.
+     *
+     * @return current weather by city id, in the order of the requested ids
+     * @throws IllegalArgumentException if more than weatherapi.batch.max-cities ids are requested or an id is null
+     */
+    public CompletableFuture<Map<Long, JsonNode>> getCurrentWeatherBatchAsync(Collection<Long> cityIds) {
+        Set<Long> ids = new LinkedHashSet<>(cityIds);
+        if (ids.contains(null)) {
+            throw new IllegalArgumentException("City id must not be null");
+        }
+        if (ids.size() > batchMaxCities) {
+            throw new IllegalArgumentException("At most " + batchMaxCities + " cities can be requested at once, got " + ids.size());
+        }
+        Map<Long, City> cities = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (City city : cityRepository.findAllWithRegionAndCountryByIdIn(ids)) {
+                cities.put(city.getId(), city);
+            }
+        }
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(batchMaxConcurrency);
+        long deadlineAt = System.nanoTime() + batchDeadline.toNanos();
+        Map<Long, CompletableFuture<JsonNode>> futures = new LinkedHashMap<>();
+        for (Long id : ids) {
+            City city = cities.get(id);
+            CompletableFuture<JsonNode> future = city == null
+                    ? CompletableFuture.completedFuture(errorEntry("City not found"))
+                    : withDeadline(limiter.submit(beforeDeadline(deadlineAt,
+                            () -> resolveWeatherApiCityIdAsync(city).thenCompose(this::getCurrentWeatherByWeatherApiCityIdAsync))),
+                    batchDeadline)
+                    .thenApply(WeatherPayload::json)
+                    .exceptionally(ex -> errorEntry(unwrap(ex).getMessage()));
+            futures.put(id, future);
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            Map<Long, JsonNode> result = new LinkedHashMap<>();
+            futures.forEach((id, future) -> result.put(id, future.join()));
+            return result;
+        });
+    }
+
+    //Same shape as Weather API errors
+    private JsonNode errorEntry(String message) {
+        ObjectNode entry = objectMapper.createObjectNode();
+        entry.putObject("error").put("message", message);
+        return entry;
+    }
+
+    /**
+     * Returns the weatherapi.com location id for the city. The id is looked up through the search API only once,
+     * after that it is stored in the city record and reused.
+     *
+     * @param city the city from internal database
+     * @return weatherapi.com location id or null if the search API returned nothing for the city
+     */
+    public Integer resolveWeatherApiCityId(City city) throws IOException {
+        return await(resolveWeatherApiCityIdAsync(city));
+    }
+
+    /**
+     * Non-blocking variant of {@link #resolveWeatherApiCityId(City)}. The gazetteer is read on the calling thread,
+     * the resolved id is stored on the database executor.
+     */
+    public CompletableFuture<Integer> resolveWeatherApiCityIdAsync(City city) {
+        if (city.getWeatherApiId() != null) {
+            return CompletableFuture.completedFuture(city.getWeatherApiId());
+        }
+        //The city may be renamed or moved while the search runs, the id is stored only for the searched name and region
+        String name = city.getName();
+        Long regionId = city.getRegion().getId();
+        return getIdFromSearchAPI(
                 city.getRegion().getCountry().getName(),
                 city.getRegion().getName(),
-                city.getName()
-        );
-        return getCurrentWeatherByWeatherApiCityId(weatherApiCityId);
+                name
+        ).thenApplyAsync(weatherApiCityId -> {
+            if (weatherApiCityId != null) {
+                //City which is not saved yet gets the id persisted together with the record
+                if (city.getId() != null) {
+                    cityRepository.updateWeatherApiId(city.getId(), name, regionId, weatherApiCityId);
+                }
+                city.setWeatherApiId(weatherApiCityId);
+            }
+            return weatherApiCityId;
+        }, dbExecutor);
+    }
+
+    private CompletableFuture<Integer> getIdFromSearchAPI(String country, String region, String city) {
+        Optional<Integer> known = gazetteer.findLocationId(city, region, country);
+        if (known.isPresent()) {
+            return CompletableFuture.completedFuture(known.get());
+        }
+        //Handle 403, 401
+        return searchLocations(city)
+                .thenApply(locations -> selectLocationId(locations, country, region))
+                .exceptionally(ex -> {
+                    if (unwrap(ex) instanceof JsonProcessingException e) {
+                        log.warn("Weather API search response for {} could not be parsed: {}", city, e.getOriginalMessage());
+                        return null;
+                    }
+                    throw new CompletionException(unwrap(ex));
+                });
+    }
+
+    /**
+     * Locations matching the name, from the local gazetteer if it has a fresh result for the name, otherwise from
+     * the search API. Search API results are stored in the gazetteer.
+     */
+    private CompletableFuture<List<SearchLocation>> searchLocations(String name) {
+        Optional<List<SearchLocation>> known = gazetteer.findSearch(name);
+        if (known.isPresent()) {
+            return CompletableFuture.completedFuture(known.get());
+        }
+        HttpRequest request = requestBuilder()
+                .uri(URI.create(BASE_URL + "/search.json?key=" + API_KEY + "&q=" + URLEncoder.encode(name, StandardCharsets.UTF_8)))
+                .GET()
+                .build();
+        return processRequestAsync(request).thenApply(this::readSearchResponse).thenApplyAsync(locations -> {
+            gazetteer.saveSearch(name, locations);
+            return locations;
+        }, dbExecutor);
     }
 
-    private Integer getIdFromSearchAPI(String country, String region, String city) throws IOException {
+    //Only the fields of SearchLocation are read, no JSON tree is built for the response
+    private List<SearchLocation> readSearchResponse(HttpResponse<byte[]> response) {
+        try (InputStream in = WeatherPayload.uncompressed(response.body(), WeatherPayload.isGzipped(response));
+             JsonParser parser = objectMapper.createParser(in)) {
+            return SearchLocation.readList(parser);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Picks the location id from Weather API search result. The first location is taken unless there is
+     * a location with exactly the same country and region.
+     */
+    static Integer selectLocationId(List<SearchLocation> locations, String country, String region) {
         Integer result = null;
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(BASE_URL + "/search.json?key=" + API_KEY + "&q=" + city))
-                    .GET()
-                    .build();
-            //Handle 403, 401
-            HttpResponse<String> response = processRequest(request);
-            JsonNode jsonArray = objectMapper.readTree(response.body());
-            if (!jsonArray.isEmpty()) {
-                //Taking the id of the first location in result set
-                result = jsonArray.get(0).get("id").asInt();
-                //If result set size is larger than one, try to look for an exact coincidence
-                if (jsonArray.size() > 1) {
-                    for (JsonNode jsonNode : jsonArray) {
-                        if (jsonNode.get("country").asText().equals(country) && jsonNode.get("region").asText().equals(region)) {
-                            result = jsonNode.get("id").asInt();
-                        }
+        if (!locations.isEmpty()) {
+            //Taking the id of the first location in result set
+            result = locations.get(0).id();
+            //If result set size is larger than one, try to look for an exact coincidence
+            if (locations.size() > 1) {
+                for (SearchLocation location : locations) {
+                    if (location.country().equals(country) && location.region().equals(region)) {
+                        result = location.id();
                     }
                 }
             }
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
         }
         return result;
     }
 
     public JsonNode getCurrentWeatherForCitySearch(String city, String region, String country) throws IOException {
-        ArrayNode result = objectMapper.createArrayNode();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(BASE_URL + "/search.json?key=" + API_KEY + "&q=" + city))
-                .GET()
-                .build();
-        HttpResponse<String> response = processRequest(request);
-        JsonNode jsonArray = objectMapper.readTree(response.body());
+        return await(getCurrentWeatherForCitySearchAsync(city, region, country));
+    }
 
-        for (JsonNode jsonNode : jsonArray) {
-            Integer id = jsonNode.get("id").asInt();
-            if (region == null && country == null) {
-                result.add(getCurrentWeatherByWeatherApiCityId(id));
-            } else {
-                if (region != null) {
-                    if (country != null) {
-                        if ((jsonNode.get("country").asText().equals(country)) && (jsonNode.get("region").asText().equals(region))) {
-                            result.add(getCurrentWeatherByWeatherApiCityId(id));
-                        }
-                    } else if (jsonNode.get("region").asText().equals(region)) {
-                        result.add(getCurrentWeatherByWeatherApiCityId(id));
-                    }
-                } else if ((jsonNode.get("country").asText().equals(country))) {
-                    result.add(getCurrentWeatherByWeatherApiCityId(id));
-                }
+    public CompletableFuture<JsonNode> getCurrentWeatherForCitySearchAsync(String city, String region, String country) {
+        return searchLocations(city)
+                .thenCompose(locations -> withDeadline(getCurrentWeatherForLocations(locations, region, country,
+                        System.nanoTime() + searchDeadline.toNanos()), searchDeadline));
+    }
+
+    //Current weather for all matching locations is requested concurrently, results keep the search order. Locations
+    //still waiting for the concurrency limit when the deadline passes are not requested, the caller has timed out
+    private CompletableFuture<JsonNode> getCurrentWeatherForLocations(List<SearchLocation> locations, String region, String country,
+                                                                      long deadlineAt) {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(searchMaxConcurrency);
+        List<CompletableFuture<JsonNode>> futures = new ArrayList<>();
+        for (SearchLocation location : locations) {
+            if (matchesLocation(location, region, country)) {
+                Integer id = location.id();
+                futures.add(limiter.submit(beforeDeadline(deadlineAt, () -> getCurrentWeatherByWeatherApiCityIdAsync(id)))
+                        .thenApply(WeatherPayload::json));
             }
         }
-        return result;
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            ArrayNode result = objectMapper.createArrayNode();
+            for (CompletableFuture<JsonNode> future : futures) {
+                result.add(future.join());
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Checks if the location from Weather API search result matches the region and country. Null region or country
+     * matches any value.
+     */
+    static boolean matchesLocation(SearchLocation location, String region, String country) {
+        return (region == null || location.region().equals(region))
+                && (country == null || location.country().equals(country));
     }
 
     public JsonNode getWeatherForecastByCityId(Long id, Integer days) throws IOException {
+        return await(getWeatherForecastByCityIdAsync(id, days));
+    }
+
+    public CompletableFuture<JsonNode> getWeatherForecastByCityIdAsync(Long id, Integer days) {
+        return getWeatherForecastPayloadByCityIdAsync(id, days).thenApply(WeatherPayload::json);
+    }
+
+    /**
+     * Same as {@link #getWeatherForecastByCityIdAsync(Long, Integer)}, the response is returned as received from Weather API.
+     */
+    public CompletableFuture<WeatherPayload> getWeatherForecastPayloadByCityIdAsync(Long id, Integer days) {
         City city = cityRepository.findById(id).orElseThrow(() -> new RuntimeException("City not found"));
-        Integer weatherApiCityId = getIdFromSearchAPI(
-                city.getRegion().getCountry().getName(),
-                city.getRegion().getName(),
-                city.getName()
-        );
-        return getWeatherForecastByWeatherApiCityId(weatherApiCityId, days);
+        return resolveWeatherApiCityIdAsync(city).thenCompose(weatherApiCityId -> {
+            if (weatherApiCityId != null && days != null) {
+                forecastRequests.record(new ForecastRequest(weatherApiCityId, days));
+            }
+            return forecastCache.get(weatherApiCityId, days, this::getWeatherForecastByWeatherApiCityId);
+        });
+    }
+
+    /**
+     * Refreshes cached current weather of the most requested locations if it is missing or expires within lead,
+     * then halves the request counts, so the ranking follows recent requests.
+     *
+     * @param topLocations number of the most requested locations to check
+     * @param maxCalls     maximum number of locations to refresh
+     * @return number of started refreshes
+     */
+    public int prewarmCurrentWeather(int topLocations, Duration lead, int maxCalls) {
+        int started = 0;
+        for (Integer id : currentWeatherRequests.top(topLocations)) {
+            if (started >= maxCalls) {
+                break;
+            }
+            if (!currentWeatherCache.isFreshFor(id, lead) && currentWeatherCache.refresh(id, this::fetchCurrentWeather)) {
+                started++;
+            }
+        }
+        currentWeatherRequests.decay();
+        return started;
+    }
+
+    /**
+     * Same as {@link #prewarmCurrentWeather(int, Duration, int)} for forecasts. A location is refreshed for the longest
+     * of its most requested forecasts.
+     */
+    public int prewarmForecasts(int topLocations, Duration lead, int maxCalls) {
+        Map<Integer, Integer> days = new LinkedHashMap<>();
+        for (ForecastRequest request : forecastRequests.top(topLocations)) {
+            days.merge(request.locationId(), request.days(), Math::max);
+        }
+        int started = 0;
+        for (Map.Entry<Integer, Integer> location : days.entrySet()) {
+            if (started >= maxCalls) {
+                break;
+            }
+            if (!forecastCache.isFreshFor(location.getKey(), location.getValue(), lead)) {
+                forecastCache.refresh(location.getKey(), location.getValue(), this::getWeatherForecastByWeatherApiCityId)
+                        .whenComplete((payload, ex) -> {
+                            if (ex != null) {
+                                log.warn("Pre-warming of forecast for location {} failed: {}", location.getKey(), ex.getMessage());
+                            }
+                        });
+                started++;
+            }
+        }
+        forecastRequests.decay();
+        return started;
     }
 
-    private JsonNode getCurrentWeatherByWeatherApiCityId(Integer id) throws IOException {
-        HttpRequest request = HttpRequest.newBuilder()
+    private CompletableFuture<WeatherPayload> getCurrentWeatherByWeatherApiCityIdAsync(Integer id) {
+        if (id == null) {
+            //Nothing to cache, Weather API responds with an error for the missing location
+            return fetchCurrentWeather(null);
+        }
+        currentWeatherRequests.record(id);
+        return currentWeatherCache.get(id, this::fetchCurrentWeather);
+    }
+
+    private CompletableFuture<WeatherPayload> fetchCurrentWeather(Integer id) {
+        if (currentWeatherBatcher != null && id != null) {
+            return currentWeatherBatcher.submit(id);
+        }
+        return fetchSingleCurrentWeather(id);
+    }
+
+    private CompletableFuture<WeatherPayload> fetchSingleCurrentWeather(Integer id) {
+        HttpRequest request = requestBuilder()
                 .uri(URI.create(BASE_URL + "/current.json?key=" + API_KEY + "&q=id:" + id))
                 .GET()
                 .build();
-        HttpResponse<String> response = processRequest(request);
-        return objectMapper.readTree(response.body());
+        return processRequestAsync(request).thenApply(WeatherPayload::of);
     }
 
-    private JsonNode getWeatherForecastByWeatherApiCityId(Integer id, Integer days) throws IOException {
-        HttpRequest request = HttpRequest.newBuilder()
+    /**
+     * Requests current weather for several locations with one Weather API bulk request. Every location of the response
+     * is returned in the same form as the response of a single location request: location and current, or error.
+     * An error of the whole request (e.g. bulk requests are not available for the API key) is returned for every location.
+     */
+    private CompletableFuture<Map<Integer, WeatherPayload>> fetchCurrentWeatherBulk(List<Integer> ids) {
+        if (ids.size() == 1) {
+            return fetchSingleCurrentWeather(ids.get(0)).thenApply(response -> Map.of(ids.get(0), response));
+        }
+        ObjectNode body = objectMapper.createObjectNode();
+        ArrayNode locations = body.putArray("locations");
+        for (Integer id : ids) {
+            locations.addObject().put("q", "id:" + id).put("custom_id", id.toString());
+        }
+        HttpRequest request;
+        try {
+            request = requestBuilder()
+                    .uri(URI.create(BASE_URL + "/current.json?key=" + API_KEY + "&q=bulk"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return processRequestAsync(request, ids.size()).thenApply(httpResponse -> {
+            Map<Integer, WeatherPayload> result = new HashMap<>();
+            JsonNode response = readBody(httpResponse);
+            if (response.has("error")) {
+                WeatherPayload error = WeatherPayload.of(httpResponse);
+                ids.forEach(id -> result.put(id, error));
+                return result;
+            }
+            for (JsonNode item : response.path("bulk")) {
+                JsonNode query = item.path("query");
+                if (!query.hasNonNull("custom_id")) {
+                    continue;
+                }
+                Integer id = query.get("custom_id").asInt();
+                ObjectNode weather = objectMapper.createObjectNode();
+                if (query.has("error")) {
+                    weather.set("error", query.get("error"));
+                } else {
+                    weather.set("location", query.get("location"));
+                    weather.set("current", query.get("current"));
+                }
+                result.put(id, WeatherPayload.of(weather));
+            }
+            return result;
+        });
+    }
+
+    private CompletableFuture<WeatherPayload> getWeatherForecastByWeatherApiCityId(Integer id, Integer days) {
+        HttpRequest request = requestBuilder()
                 .uri(URI.create(BASE_URL
                         + "/forecast.json?key=" + API_KEY
                         + "&q=id:" + id
@@ -128,24 +516,194 @@ public class WeatherService {
                         + "&hour=25")) // hour = 25 to omit hours from the forecast
                 .GET()
                 .build();
-        HttpResponse<String> response = processRequest(request);
-        return objectMapper.readTree(response.body());
+        return processRequestAsync(request).thenApply(WeatherPayload::of);
     }
 
-    private HttpResponse<String> processRequest(HttpRequest request) throws IOException {
-        HttpResponse<String> response;
-        try {
-            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    //Responses are requested compressed, they are passed to clients or parsed without decompressing them into a string
+    private HttpRequest.Builder requestBuilder() {
+        return HttpRequest.newBuilder()
+                .timeout(requestTimeout)
+                .header("Accept-Encoding", "gzip");
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> processRequestAsync(HttpRequest request) {
+        return processRequestAsync(request, 1);
+    }
+
+    /**
+     * @param calls number of Weather API calls the request is accounted as, e.g. number of locations of a bulk request
+     */
+    private CompletableFuture<HttpResponse<byte[]>> processRequestAsync(HttpRequest request, int calls) {
+        return sendShared(request, calls).thenApply(response -> {
             if (response.statusCode() == 403) {
-                throw new WeatherAPIForbiddenException("Weather API key has been disabled. Please check that your API key is correct.");
+                throw new CompletionException(new WeatherAPIForbiddenException("Weather API key has been disabled. Please check that your API key is correct."));
             } else if (response.statusCode() == 401) {
-                throw new WeatherAPIUnauthorizedException("Weather API key is invalid or not exists. Please check you API key.");
+                throw new CompletionException(new WeatherAPIUnauthorizedException("Weather API key is invalid or not exists. Please check you API key."));
             } else if (response.statusCode() == 408) {
-                throw new WeatherAPIRequestTimeoutException("The request timed out. Ensure the Weather API is reachable and try again.");
+                throw new CompletionException(new WeatherAPIRequestTimeoutException("The request timed out. Ensure the Weather API is reachable and try again."));
             }
+            return response;
+        });
+    }
+
+    private JsonNode readBody(HttpResponse<byte[]> response) {
+        try (InputStream in = WeatherPayload.uncompressed(response.body(), WeatherPayload.isGzipped(response))) {
+            return objectMapper.readTree(in);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new IllegalStateException("Operation was interrupted", e);
+        } catch (ExecutionException e) {
+            throw asIOException(e);
+        }
+    }
+
+    //Completes with WeatherAPIRequestTimeoutException if the future is not completed in time
+    //Task that fails without being started once System.nanoTime() reaches deadlineAt, for tasks that wait in a queue
+    private static <T> Supplier<CompletableFuture<T>> beforeDeadline(long deadlineAt, Supplier<CompletableFuture<T>> task) {
+        return () -> System.nanoTime() - deadlineAt >= 0
+                ? CompletableFuture.failedFuture(new TimeoutException("Deadline has passed before the request was sent"))
+                : task.get();
+    }
+
+    private static <T> CompletableFuture<T> withDeadline(CompletableFuture<T> future, Duration deadline) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        future.orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS).whenComplete((value, ex) -> {
+            if (ex == null) {
+                result.complete(value);
+            } else if (unwrap(ex) instanceof TimeoutException) {
+                result.completeExceptionally(new WeatherAPIRequestTimeoutException("The request timed out. Ensure the Weather API is reachable and try again."));
+            } else {
+                result.completeExceptionally(unwrap(ex));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Sends request to Weather API. Concurrent GET requests for the same URI share one pending response
+     * instead of sending identical calls.
+     */
+    private CompletableFuture<HttpResponse<byte[]>> sendShared(HttpRequest request, int calls) {
+        if (!"GET".equals(request.method())) {
+            //Bulk requests have the same URI and different bodies
+            return send(request, calls);
+        }
+        URI uri = request.uri();
+        CompletableFuture<HttpResponse<byte[]>> pending = new CompletableFuture<>();
+        CompletableFuture<HttpResponse<byte[]>> existing = inFlightRequests.putIfAbsent(uri, pending);
+        //Every caller gets its own copy, so completing or cancelling it does not affect the other callers
+        if (existing != null) {
+            return existing.copy();
+        }
+        send(request, calls).whenComplete((response, ex) -> {
+            inFlightRequests.remove(uri, pending);
+            if (ex != null) {
+                pending.completeExceptionally(unwrap(ex));
+            } else {
+                pending.complete(response);
+            }
+        });
+        return pending.copy();
+    }
+
+    /**
+     * Sends request through the quota governor and the circuit breaker of its endpoint. Network errors, timeouts and
+     * 5xx responses are failures of the breaker, GET requests that fail this way are retried with jittered exponential
+     * backoff while the retry budget allows. Completes with WeatherAPIQuotaExceededException if the call limits are
+     * reached and with WeatherAPIUnavailableException while the breaker is open.
+     */
+    private CompletableFuture<HttpResponse<byte[]>> send(HttpRequest request, int calls) {
+        retryBudget.onRequest();
+        String endpoint = endpoint(request);
+        return send(request, calls, endpoint, circuitBreaker(endpoint), 1);
+    }
+
+    //The breaker is checked first, so calls it rejects fail fast and are not counted against the call limits
+    private CompletableFuture<HttpResponse<byte[]>> send(HttpRequest request, int calls, String endpoint,
+                                                         CircuitBreaker breaker, int attempt) {
+        if (!breaker.tryAcquire()) {
+            return CompletableFuture.failedFuture(new WeatherAPIUnavailableException(
+                    "Weather API is unavailable, requests are suspended after repeated failures. Try again later."));
+        }
+        return quotaGovernor.acquire(endpoint, calls).handle((ignored, ex) -> {
+            if (ex != null) {
+                breaker.release();
+                return CompletableFuture.<HttpResponse<byte[]>>failedFuture(unwrap(ex));
+            }
+            return attempt(request, calls, endpoint, breaker, attempt);
+        }).thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> attempt(HttpRequest request, int calls, String endpoint,
+                                                            CircuitBreaker breaker, int attempt) {
+        CompletableFuture<HttpResponse<byte[]>> sent;
+        try {
+            sent = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        return sent.handle((response, ex) -> {
+            Throwable cause = ex == null ? null : unwrap(ex);
+            boolean failed = cause != null || response.statusCode() >= 500;
+            if (failed) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+            if (failed && "GET".equals(request.method()) && attempt < retryMaxAttempts && retryBudget.tryRetry()) {
+                Executor delay = CompletableFuture.delayedExecutor(backoff(attempt), TimeUnit.MILLISECONDS);
+                return CompletableFuture.supplyAsync(() -> null, delay)
+                        .thenCompose(ignored -> send(request, calls, endpoint, breaker, attempt + 1));
+            }
+            if (cause instanceof HttpTimeoutException) {
+                return CompletableFuture.<HttpResponse<byte[]>>failedFuture(new WeatherAPIRequestTimeoutException(
+                        "The request timed out. Ensure the Weather API is reachable and try again."));
+            }
+            return cause != null ? CompletableFuture.<HttpResponse<byte[]>>failedFuture(cause) : CompletableFuture.completedFuture(response);
+        }).thenCompose(Function.identity());
+    }
+
+    //Full jitter: random delay up to the exponential backoff of the attempt
+    private long backoff(int attempt) {
+        long max = Math.min(retryMaxBackoff.toMillis(), retryBackoff.toMillis() << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(max + 1);
+    }
+
+    //E.g. "current" for /v1/current.json
+    private static String endpoint(HttpRequest request) {
+        String path = request.uri().getPath();
+        return path.substring(path.lastIndexOf('/') + 1).replace(".json", "");
+    }
+
+    private CircuitBreaker circuitBreaker(String endpoint) {
+        return circuitBreakers.computeIfAbsent(endpoint, name -> new CircuitBreaker(name, circuitFailureRateThreshold / 100.0,
+                circuitSlidingWindowSize, circuitMinimumCalls, circuitOpenDuration, circuitHalfOpenCalls, meterRegistry));
+    }
+
+    private static IOException asIOException(Throwable e) {
+        Throwable cause = unwrap(e);
+        if (cause instanceof IOException ioException) {
+            return ioException;
+        }
+        if (cause instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        return new IOException(cause);
+    }
+
+    static Throwable unwrap(Throwable e) {
+        Throwable cause = e;
+        while ((cause instanceof ExecutionException || cause instanceof CompletionException) && cause.getCause() != null) {
+            cause = cause.getCause();
         }
-        return response;
+        return cause;
     }
 }
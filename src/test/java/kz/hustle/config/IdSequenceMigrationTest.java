@@ -0,0 +1,87 @@
+package kz.hustle.config;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.FlywayException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the migration with Flyway against a database created before the switch from IDENTITY columns.
+ */
+public class IdSequenceMigrationTest {
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void createIdentityDatabase() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:id-sequence-migration", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        jdbcTemplate.execute("CREATE TABLE country (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE region (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE city (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255))");
+        jdbcTemplate.update("INSERT INTO country (id, name) VALUES (7, 'Kazakhstan')");
+        jdbcTemplate.update("INSERT INTO region (id, name) VALUES (3, 'Almaty City'), (12, 'Turkestan')");
+        jdbcTemplate.update("INSERT INTO city (id, name) VALUES (120, 'Almaty'), (121, 'Shymkent')");
+    }
+
+    @Test
+    public void testSequencesStartAfterExistingIds() {
+        migrate(50);
+        //Pooled optimizer takes ids from (value - 50, value], the first of them is above the existing ids
+        assertEquals(7 + 50, nextValue("country_seq"));
+        assertEquals(12 + 50, nextValue("region_seq"));
+        assertEquals(121 + 50, nextValue("city_seq"));
+        assertEquals(121 + 100, nextValue("city_seq"));
+    }
+
+    @Test
+    public void testChangedAllocationSizeRestartsSequences() {
+        migrate(50);
+        jdbcTemplate.update("INSERT INTO city (id, name) VALUES (171, 'Turkestan')");
+
+        migrate(20);
+        assertEquals(171 + 20, nextValue("city_seq"));
+        assertEquals(171 + 40, nextValue("city_seq"));
+        assertEquals(7 + 20, nextValue("country_seq"));
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM \"flyway_schema_history\" WHERE \"description\" = 'Pooled id sequences'", Integer.class));
+    }
+
+    @Test
+    public void testUnchangedAllocationSizeDoesNotRestartSequences() {
+        migrate(50);
+        assertEquals(121 + 50, nextValue("city_seq"));
+
+        migrate(50);
+        assertEquals(121 + 100, nextValue("city_seq"));
+    }
+
+    @Test
+    public void testNonPositiveAllocationSizeIsRejected() {
+        assertThrows(FlywayException.class, () -> migrate(0));
+    }
+
+    private void migrate(int allocationSize) {
+        IdSequenceMigration migration = new IdSequenceMigration();
+        ReflectionTestUtils.setField(migration, "allocationSize", allocationSize);
+        //Same baseline as spring.flyway.* in application.properties
+        Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .javaMigrations(migration)
+                .load()
+                .migrate();
+    }
+
+    private long nextValue(String sequence) {
+        return jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR " + sequence, Long.class);
+    }
+}
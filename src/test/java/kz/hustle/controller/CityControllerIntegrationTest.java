@@ -1,28 +1,43 @@
 package kz.hustle.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
 import kz.hustle.dto.CityDTO;
+import kz.hustle.dto.CityImportResult;
 import kz.hustle.entity.City;
 import kz.hustle.entity.Country;
 import kz.hustle.entity.Region;
 import kz.hustle.repository.CityRepository;
 import kz.hustle.repository.CountryRepository;
 import kz.hustle.repository.RegionRepository;
+import kz.hustle.service.CityService;
+import kz.hustle.service.GeoDataChangedEvent;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
+@RecordApplicationEvents
 public class CityControllerIntegrationTest {
     @Autowired
     private TestRestTemplate restTemplate;
@@ -36,6 +51,15 @@ public class CityControllerIntegrationTest {
     @Autowired
     private CityRepository cityRepository;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CityService cityService;
+
+    @Autowired
+    private ApplicationEvents applicationEvents;
+
     @BeforeEach
     public void setUp() {
         cityRepository.deleteAll();
@@ -60,6 +84,175 @@ public class CityControllerIntegrationTest {
         assertEquals(2, response.getBody().length);
     }
 
+    @Test
+    public void getAllCitiesSingleStatementTest() {
+        Country country1 = new Country("KZ", "Kazakhstan");
+        Country country2 = new Country("US", "USA");
+        Region region1 = new Region(country1, "South Kazakhstan");
+        Region region2 = new Region(country1, "Jetisu");
+        Region region3 = new Region(country2, "Texas");
+        countryRepository.saveAll(List.of(country1, country2));
+        regionRepository.saveAll(List.of(region1, region2, region3));
+        cityRepository.saveAll(List.of(new City("Shymkent", region1), new City("Taldykorgan", region2),
+                new City("Dallas", region3), new City("Austin", region3)));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        ResponseEntity<CityDTO[]> response = restTemplate.getForEntity("/city/all", CityDTO[].class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(4, response.getBody().length);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        statistics.clear();
+        response = restTemplate.getForEntity("/city/all?country=USA", CityDTO[].class);
+        assertEquals(2, response.getBody().length);
+        assertEquals("USA", response.getBody()[0].getCountryName());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void getAllCitiesByOverlongNumericCountryTest() {
+        Country country = countryRepository.save(new Country("KZ", "Kazakhstan"));
+        cityRepository.save(new City("Shymkent", regionRepository.save(new Region(country, "South Kazakhstan"))));
+        ResponseEntity<CityDTO[]> response = restTemplate.getForEntity("/city/all?country=99999999999999999999999", CityDTO[].class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(0, response.getBody().length);
+    }
+
+    @Test
+    public void getAllCitiesPaginationTest() {
+        Country country = countryRepository.save(new Country("KZ", "Kazakhstan"));
+        Region region = regionRepository.save(new Region(country, "South Kazakhstan"));
+        cityRepository.saveAll(List.of(new City("Shymkent", region), new City("Turkestan", region),
+                new City("Kentau", region), new City("Arys", region), new City("Saryagash", region)));
+
+        ResponseEntity<CityDTO[]> firstPage = restTemplate.getForEntity("/city/all?limit=2", CityDTO[].class);
+        assertEquals(HttpStatus.OK, firstPage.getStatusCode());
+        assertEquals(2, firstPage.getBody().length);
+        String cursor = firstPage.getHeaders().getFirst("X-Next-Cursor");
+        assertNotNull(cursor);
+
+        ResponseEntity<CityDTO[]> secondPage = restTemplate.getForEntity("/city/all?limit=2&after={cursor}", CityDTO[].class, cursor);
+        assertEquals(2, secondPage.getBody().length);
+        assertTrue(secondPage.getBody()[0].getCityId() > firstPage.getBody()[1].getCityId());
+        cursor = secondPage.getHeaders().getFirst("X-Next-Cursor");
+
+        ResponseEntity<CityDTO[]> lastPage = restTemplate.getForEntity("/city/all?limit=2&after={cursor}", CityDTO[].class, cursor);
+        assertEquals(1, lastPage.getBody().length);
+        assertEquals("Saryagash", lastPage.getBody()[0].getCityName());
+        assertNull(lastPage.getHeaders().getFirst("X-Next-Cursor"));
+    }
+
+    @Test
+    public void getAllCitiesInvalidCursorTest() {
+        ResponseEntity<String> response = restTemplate.getForEntity("/city/all?after=not-a-cursor", String.class);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    public void exportCitiesTest() throws JsonProcessingException {
+        Country country = countryRepository.save(new Country("KZ", "Kazakhstan"));
+        Region region = regionRepository.save(new Region(country, "South Kazakhstan"));
+        cityRepository.saveAll(List.of(new City("Shymkent", region), new City("Turkestan", region), new City("Kentau", region)));
+        ResponseEntity<String> response = restTemplate.getForEntity("/city/export", String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(MediaType.APPLICATION_NDJSON.isCompatibleWith(response.getHeaders().getContentType()));
+        String[] lines = response.getBody().split("\n");
+        assertEquals(3, lines.length);
+        for (String line : lines) {
+            assertTrue(line.startsWith("{"), line);
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        CityDTO first = objectMapper.readValue(lines[0], CityDTO.class);
+        assertEquals("Shymkent", first.getCityName());
+        assertEquals("Kazakhstan", first.getCountryName());
+        assertEquals("Kentau", objectMapper.readValue(lines[2], CityDTO.class).getCityName());
+    }
+
+    @Test
+    public void importCitiesFromJsonTest() {
+        countryRepository.save(new Country("KZ", "Kazakhstan"));
+        String body = "[" +
+                "{\"cityName\": \"Shymkent\", \"regionName\": \"South Kazakhstan\", \"countryName\": \"Kazakhstan\"}," +
+                "{\"cityName\": \"Turkestan\", \"regionName\": \"South Kazakhstan\", \"countryName\": \"Kazakhstan\"}," +
+                "{\"cityName\": \"\", \"regionName\": \"South Kazakhstan\", \"countryName\": \"Kazakhstan\"}," +
+                "{\"cityName\": \"Dallas\", \"regionName\": \"Texas\", \"countryName\": \"USA\"}" +
+                "]";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        ResponseEntity<CityImportResult> response = restTemplate.postForEntity("/city/import",
+                new HttpEntity<>(body, headers), CityImportResult.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        CityImportResult result = response.getBody();
+        assertNotNull(result);
+        assertEquals(4, result.rows());
+        assertEquals(3, result.imported());
+        assertEquals(1, result.failed());
+        assertEquals(3, result.errors().get(0).row());
+        assertEquals(3, cityRepository.count());
+        //Existing country is reused, the missing one is created once
+        assertEquals(2, countryRepository.count());
+        assertEquals(2, regionRepository.count());
+    }
+
+    @Test
+    public void importCitiesFromCsvTest() {
+        String body = "cityName,regionName,countryName\n" +
+                "Shymkent,South Kazakhstan,Kazakhstan\n" +
+                "\"Turkestan\",\"South Kazakhstan\",Kazakhstan\n" +
+                "Broken row\n" +
+                "Almaty,\"Almaty, City\",Kazakhstan\n";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.valueOf("text/csv"));
+        ResponseEntity<CityImportResult> response = restTemplate.postForEntity("/city/import",
+                new HttpEntity<>(body, headers), CityImportResult.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        CityImportResult result = response.getBody();
+        assertNotNull(result);
+        assertEquals(4, result.rows());
+        assertEquals(3, result.imported());
+        assertEquals(1, result.failed());
+        assertEquals(3, result.errors().get(0).row());
+        assertTrue(regionRepository.findByName("Almaty, City").isPresent());
+        assertEquals(3, cityRepository.count());
+    }
+
+    @Test
+    public void importCitiesInvalidJsonTest() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        ResponseEntity<String> response = restTemplate.postForEntity("/city/import",
+                new HttpEntity<>("{not json", headers), String.class);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    public void searchCitiesTest() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.valueOf("text/csv;charset=UTF-8"));
+        restTemplate.postForEntity("/city/import", new HttpEntity<>(
+                "Almaty,Almaty City,Kazakhstan\nAlmalyk,Tashkent Region,Uzbekistan\n\u015eymkent,South Kazakhstan,Kazakhstan\n" +
+                        "S\u00e3o Paulo,S\u00e3o Paulo,Brazil\nAstana,Astana City,Kazakhstan\n", headers), CityImportResult.class);
+
+        CityDTO[] cities = restTemplate.getForEntity("/city/search?prefix=ALM", CityDTO[].class).getBody();
+        assertNotNull(cities);
+        assertEquals(2, cities.length);
+        assertEquals("Almalyk", cities[0].getCityName());
+        assertEquals("Uzbekistan", cities[0].getCountryName());
+        assertEquals("Almaty", cities[1].getCityName());
+        assertEquals(1, restTemplate.getForEntity("/city/search?prefix=alm&limit=1", CityDTO[].class).getBody().length);
+        assertEquals("\u015eymkent", restTemplate.getForEntity("/city/search?prefix=sym", CityDTO[].class).getBody()[0].getCityName());
+        assertEquals("S\u00e3o Paulo", restTemplate.getForEntity("/city/search?prefix=sao p", CityDTO[].class).getBody()[0].getCityName());
+
+        //Index follows renames and deletes
+        CityDTO astana = restTemplate.getForEntity("/city/search?prefix=astana", CityDTO[].class).getBody()[0];
+        restTemplate.put("/city/{id}", new CityDTO("Nur-Sultan", "Astana City", "Kazakhstan"), astana.getCityId());
+        assertEquals(0, restTemplate.getForEntity("/city/search?prefix=astana", CityDTO[].class).getBody().length);
+        assertEquals(1, restTemplate.getForEntity("/city/search?prefix=nur", CityDTO[].class).getBody().length);
+        restTemplate.delete("/city/{id}", astana.getCityId());
+        assertEquals(0, restTemplate.getForEntity("/city/search?prefix=nur", CityDTO[].class).getBody().length);
+    }
+
     @Test
     public void createCityTest() {
         Country country = countryRepository.save(new Country("KZ", "Kazakhstan"));
@@ -84,6 +277,33 @@ public class CityControllerIntegrationTest {
         assertEquals("South Kazakhstan", response.getBody().getRegionName());
     }
 
+    @Test
+    public void createCityEventListsOnlyCreatedRowsTest() {
+        CityDTO shymkent = cityService.createCity(new CityDTO("Shymkent", "South Kazakhstan", "Kazakhstan"));
+        CityDTO turkestan = cityService.createCity(new CityDTO("Turkestan", "South Kazakhstan", "Kazakhstan"));
+        CityDTO taraz = cityService.createCity(new CityDTO("Taraz", "Jambyl", "Kazakhstan"));
+
+        List<GeoDataChangedEvent> events = applicationEvents.stream(GeoDataChangedEvent.class).toList();
+        assertEquals(3, events.size());
+        assertEquals(1, events.get(0).countryIds().size());
+        assertEquals(1, events.get(0).regionIds().size());
+        assertEquals(GeoDataChangedEvent.city(turkestan.getCityId()), events.get(1));
+        assertEquals(Set.of(), events.get(2).countryIds());
+        assertEquals(1, events.get(2).regionIds().size());
+        assertEquals(Set.of(taraz.getCityId()), events.get(2).cityIds());
+
+        //Cities added to existing regions are indexed with the region and country names
+        CityDTO[] cities = restTemplate.getForEntity("/city/search?prefix=t", CityDTO[].class).getBody();
+        assertNotNull(cities);
+        assertEquals(2, cities.length);
+        assertEquals("Taraz", cities[0].getCityName());
+        assertEquals("Jambyl", cities[0].getRegionName());
+        assertEquals("Turkestan", cities[1].getCityName());
+        assertEquals("South Kazakhstan", cities[1].getRegionName());
+        assertEquals("Kazakhstan", cities[1].getCountryName());
+        assertEquals(shymkent.getRegionName(), cities[1].getRegionName());
+    }
+
     @Test
     public void updateCityTest() {
         Country country = countryRepository.save(new Country("KZ", "Kazakhstan"));
@@ -100,6 +320,19 @@ public class CityControllerIntegrationTest {
         assertEquals("South Kazakhstan", response.getBody().getRegionName());
     }
 
+    @Test
+    public void updateCityResetsWeatherApiIdTest() {
+        Country country = countryRepository.save(new Country("KZ", "Kazakhstan"));
+        Region region = regionRepository.save(new Region(country, "South Kazakhstan"));
+        City city = new City("Shymkent", region);
+        city.setWeatherApiId(1);
+        Long cityId = cityRepository.save(city).getId();
+        CityDTO newCity = new CityDTO();
+        newCity.setCityName("Turkestan");
+        restTemplate.put("/city/{id}", newCity, cityId);
+        assertNull(cityRepository.findById(cityId).orElseThrow().getWeatherApiId());
+    }
+
     @Test
     public void deleteCityTest() {
         CityDTO city = restTemplate
@@ -0,0 +1,30 @@
+package kz.hustle.controller;
+
+import kz.hustle.dto.CityDTO;
+import kz.hustle.repository.CityRepository;
+import kz.hustle.service.CityService;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class CityTestSupport {
+
+    private CityTestSupport() {
+    }
+
+    /**
+     * Creates the city and waits until its Weather API location id is stored. The id is searched after the create
+     * transaction is committed, asynchronously, so tests counting upstream calls must not start before that.
+     */
+    static Long createResolvedCity(CityService cityService, CityRepository cityRepository, CityDTO city)
+            throws InterruptedException {
+        Long cityId = cityService.createCity(city).getCityId();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cityRepository.findById(cityId).orElseThrow().getWeatherApiId() == null) {
+            assertTrue(System.nanoTime() < deadline, "Location id of " + city.getCityName() + " is not resolved");
+            Thread.sleep(10);
+        }
+        return cityId;
+    }
+}
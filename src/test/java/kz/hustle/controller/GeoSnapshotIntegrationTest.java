@@ -0,0 +1,104 @@
+package kz.hustle.controller;
+
+import jakarta.persistence.EntityManagerFactory;
+import kz.hustle.dto.CityDTO;
+import kz.hustle.dto.RegionDTO;
+import kz.hustle.entity.Country;
+import kz.hustle.repository.CityRepository;
+import kz.hustle.repository.CountryRepository;
+import kz.hustle.repository.RegionRepository;
+import kz.hustle.service.GeoSnapshotService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Read endpoints served from the in-memory geo snapshot.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "geo.snapshot.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:geo-snapshot",
+        "spring.jpa.properties.hibernate.cache.region_prefix=geo-snapshot"
+})
+@ActiveProfiles("test")
+public class GeoSnapshotIntegrationTest {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private CityRepository cityRepository;
+
+    @Autowired
+    private RegionRepository regionRepository;
+
+    @Autowired
+    private CountryRepository countryRepository;
+
+    @Autowired
+    private GeoSnapshotService geoSnapshotService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    public void setUp() {
+        cityRepository.deleteAll();
+        regionRepository.deleteAll();
+        countryRepository.deleteAll();
+        //Repositories are used directly, so the snapshot is not notified
+        geoSnapshotService.load();
+    }
+
+    @Test
+    public void readsWithoutDatabaseTest() {
+        CityDTO city = restTemplate.postForEntity("/city/create-simple",
+                new CityDTO("Shymkent", "South Kazakhstan", "Kazakhstan"), CityDTO.class).getBody();
+        restTemplate.postForEntity("/city/create-simple", new CityDTO("Dallas", "Texas", "USA"), CityDTO.class);
+        assertNotNull(city);
+        Long countryId = countryRepository.findByName("Kazakhstan").orElseThrow().getId();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        ResponseEntity<CityDTO> cityResponse = restTemplate.getForEntity("/city/{id}", CityDTO.class, city.getCityId());
+        assertEquals(HttpStatus.OK, cityResponse.getStatusCode());
+        assertEquals("South Kazakhstan", cityResponse.getBody().getRegionName());
+        assertEquals("Kazakhstan", cityResponse.getBody().getCountryName());
+        CityDTO[] cities = restTemplate.getForEntity("/city/all?country=Kazakhstan", CityDTO[].class).getBody();
+        assertEquals(1, cities.length);
+        assertEquals("Shymkent", cities[0].getCityName());
+        assertEquals(2, restTemplate.getForEntity("/city/all", CityDTO[].class).getBody().length);
+        assertEquals(0, restTemplate.getForEntity("/city/all?country=99999999999999999999999", CityDTO[].class).getBody().length);
+        RegionDTO[] regions = restTemplate.getForEntity("/region/all?country=" + countryId, RegionDTO[].class).getBody();
+        assertEquals(1, regions.length);
+        assertEquals("South Kazakhstan", regions[0].getRegionName());
+        assertEquals("Kazakhstan", restTemplate.getForEntity("/country/{id}", Country.class, countryId).getBody().getName());
+        assertEquals(HttpStatus.NOT_FOUND, restTemplate.getForEntity("/city/{id}", String.class, city.getCityId() + 1000).getStatusCode());
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void changesAreVisibleAfterCommitTest() {
+        CityDTO city = restTemplate.postForEntity("/city/create-simple",
+                new CityDTO("Shymkent", "South Kazakhstan", "Kazakhstan"), CityDTO.class).getBody();
+        assertNotNull(city);
+        restTemplate.put("/city/{id}", new CityDTO("Chimkent", "South Kazakhstan", "Kazakhstan"), city.getCityId());
+        assertEquals("Chimkent", restTemplate.getForEntity("/city/{id}", CityDTO.class, city.getCityId()).getBody().getCityName());
+
+        //Deleting the country removes its regions and cities by cascade
+        Long countryId = countryRepository.findByName("Kazakhstan").orElseThrow().getId();
+        restTemplate.delete("/country/{id}", countryId);
+        assertEquals(HttpStatus.NOT_FOUND, restTemplate.getForEntity("/country/{id}", String.class, countryId).getStatusCode());
+        assertEquals(0, restTemplate.getForEntity("/city/all", CityDTO[].class).getBody().length);
+        assertEquals(0, restTemplate.getForEntity("/region/all", RegionDTO[].class).getBody().length);
+    }
+}
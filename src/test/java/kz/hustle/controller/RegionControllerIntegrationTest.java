@@ -1,11 +1,14 @@
 package kz.hustle.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import jakarta.persistence.EntityManagerFactory;
 import kz.hustle.dto.RegionDTO;
 import kz.hustle.entity.Country;
 import kz.hustle.entity.Region;
 import kz.hustle.repository.CountryRepository;
 import kz.hustle.repository.RegionRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,6 +36,9 @@ public class RegionControllerIntegrationTest {
     @Autowired
     private CountryRepository countryRepository;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     @BeforeEach
     public void setUp() {
         countryRepository.deleteAll();
@@ -53,6 +59,22 @@ public class RegionControllerIntegrationTest {
         assertEquals(2, response.getBody().length);
     }
 
+    @Test
+    public void testGetAllRegionsSingleStatement() {
+        Country country1 = new Country("KZ", "Kazakhstan");
+        Country country2 = new Country("US", "USA");
+        countryRepository.saveAll(List.of(country1, country2));
+        regionRepository.saveAll(List.of(new Region(country1, "South Kazakhstan"), new Region(country1, "Jetisu"),
+                new Region(country2, "Texas")));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        ResponseEntity<RegionDTO[]> response = restTemplate.getForEntity("/region/all", RegionDTO[].class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(3, response.getBody().length);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
     @Test
     public void testGetAllRegionsByCountry() {
         Country country1 = countryRepository.save(new Country("KZ", "Kazakhstan"));
@@ -78,6 +100,26 @@ public class RegionControllerIntegrationTest {
         assertEquals(1, response3.getBody().length);
     }
 
+    @Test
+    public void testGetRegionsByCountryNameCached() {
+        Country country = countryRepository.save(new Country("KZ", "Kazakhstan"));
+        regionRepository.save(new Region(country, "Jetisu"));
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(HttpStatus.OK, restTemplate.getForEntity("/region/all?country=Kazakhstan", RegionDTO[].class).getStatusCode());
+        }
+        assertTrue(statistics.getQueryCacheHitCount() > 0);
+        assertTrue(statistics.getSecondLevelCacheHitCount() > 0);
+
+        //Renaming the country invalidates the cached lookup by the old name
+        restTemplate.put("/country/{id}", new Country("KZ", "Qazaqstan"), country.getId());
+        assertEquals(HttpStatus.NOT_FOUND, restTemplate.getForEntity("/region/all?country=Kazakhstan", String.class).getStatusCode());
+        ResponseEntity<RegionDTO[]> response = restTemplate.getForEntity("/region/all?country=Qazaqstan", RegionDTO[].class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("Qazaqstan", response.getBody()[0].getCountryName());
+    }
+
     @Test
     public void testGetRegionById() {
         Country country = countryRepository.save(new Country("KZ", "Kazakhstan"));
@@ -0,0 +1,88 @@
+package kz.hustle.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import kz.hustle.dto.CityDTO;
+import kz.hustle.repository.CityRepository;
+import kz.hustle.service.CityService;
+import kz.hustle.stub.WeatherApiStubServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+
+import static kz.hustle.controller.CityTestSupport.createResolvedCity;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Per-minute limits of Weather API calls, against the local Weather API stub.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class WeatherApiQuotaIntegrationTest {
+
+    private static WeatherApiStubServer stub;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private CityService cityService;
+
+    @Autowired
+    private CityRepository cityRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @DynamicPropertySource
+    static void weatherApiProperties(DynamicPropertyRegistry registry) throws IOException {
+        stub = WeatherApiStubServer.start(0);
+        registry.add("weatherapi.base-url", stub::getBaseUrl);
+        registry.add("weatherapi.key", () -> "stub-key");
+        registry.add("weatherapi.resolve-on-create", () -> "true");
+        registry.add("weatherapi.rate-limit.current.per-minute", () -> "2");
+        registry.add("weatherapi.rate-limit.max-wait", () -> "0s");
+        //Every request for current weather goes to Weather API unless it is rejected
+        registry.add("weatherapi.cache.current.ttl", () -> "1ms");
+        registry.add("weatherapi.cache.current.grace", () -> "0s");
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:weather-quota");
+        registry.add("spring.jpa.properties.hibernate.cache.region_prefix", () -> "weather-quota");
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    public void testCallsOverLimitAreRejectedOrServedFromCache() throws JsonProcessingException, InterruptedException {
+        Long firstCityId = createResolvedCity(cityService, cityRepository, new CityDTO("First Town", "Stub Region", "Stubland"));
+        Long secondCityId = createResolvedCity(cityService, cityRepository, new CityDTO("Second Town", "Stub Region", "Stubland"));
+        Long thirdCityId = createResolvedCity(cityService, cityRepository, new CityDTO("Third Town", "Stub Region", "Stubland"));
+        double usedBefore = meterRegistry.get("weather.api.quota.used").gauge().value();
+        stub.resetRequestCounts();
+
+        assertEquals(HttpStatus.OK, restTemplate.getForEntity("/weather/current/{cityId}", String.class, firstCityId).getStatusCode());
+        assertEquals(HttpStatus.OK, restTemplate.getForEntity("/weather/current/{cityId}", String.class, secondCityId).getStatusCode());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS,
+                restTemplate.getForEntity("/weather/current/{cityId}", String.class, thirdCityId).getStatusCode());
+        //Expired cached weather is returned instead of an error
+        ResponseEntity<String> cached = restTemplate.getForEntity("/weather/current/{cityId}", String.class, firstCityId);
+        assertEquals(HttpStatus.OK, cached.getStatusCode());
+        assertEquals("First Town", new ObjectMapper().readTree(cached.getBody()).get("location").get("name").asText());
+
+        assertEquals(2, stub.getRequestCount("/current.json"));
+        assertEquals(usedBefore + 2, meterRegistry.get("weather.api.quota.used").gauge().value());
+        assertTrue(meterRegistry.get("weather.api.quota.exhaustion").gauge().value() > 0);
+    }
+}
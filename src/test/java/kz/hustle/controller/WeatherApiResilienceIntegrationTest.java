@@ -0,0 +1,115 @@
+package kz.hustle.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import kz.hustle.dto.CityDTO;
+import kz.hustle.repository.CityRepository;
+import kz.hustle.service.CityService;
+import kz.hustle.stub.WeatherApiStubServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+
+import static kz.hustle.controller.CityTestSupport.createResolvedCity;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Retries and circuit breaker of Weather API requests, against the local Weather API stub.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class WeatherApiResilienceIntegrationTest {
+
+    private static WeatherApiStubServer stub;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private CityService cityService;
+
+    @Autowired
+    private CityRepository cityRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @DynamicPropertySource
+    static void weatherApiProperties(DynamicPropertyRegistry registry) throws IOException {
+        stub = WeatherApiStubServer.start(0);
+        registry.add("weatherapi.base-url", stub::getBaseUrl);
+        registry.add("weatherapi.key", () -> "stub-key");
+        registry.add("weatherapi.resolve-on-create", () -> "true");
+        registry.add("weatherapi.retry.backoff", () -> "1ms");
+        //Every request for current weather goes to Weather API unless it fails
+        registry.add("weatherapi.cache.current.ttl", () -> "1ms");
+        registry.add("weatherapi.cache.current.grace", () -> "0s");
+        registry.add("weatherapi.circuit.sliding-window-size", () -> "4");
+        registry.add("weatherapi.circuit.minimum-calls", () -> "4");
+        registry.add("weatherapi.circuit.open-duration", () -> "1h");
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:weather-resilience");
+        registry.add("spring.jpa.properties.hibernate.cache.region_prefix", () -> "weather-resilience");
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @AfterEach
+    void resetStub() {
+        stub.withErrors(0, 500).failNext(0, 500).resetRequestCounts();
+    }
+
+    @Test
+    public void testFailedRequestIsRetried() throws JsonProcessingException, InterruptedException {
+        Long cityId = createResolvedCity(cityService, cityRepository, new CityDTO("Retry Town", "Stub Region", "Stubland"));
+        stub.resetRequestCounts();
+        stub.failNext(1, 503);
+        ResponseEntity<String> response = restTemplate.getForEntity("/weather/forecast?cid={cityId}&days=1", String.class, cityId);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, new ObjectMapper().readTree(response.getBody()).get("forecast").get("forecastday").size());
+        assertEquals(2, stub.getRequestCount("/forecast.json"));
+    }
+
+    @Test
+    public void testOpenCircuitFailsFastOrServesCachedWeather() throws JsonProcessingException, InterruptedException {
+        Long cachedCityId = createResolvedCity(cityService, cityRepository, new CityDTO("Cached Town", "Stub Region", "Stubland"));
+        Long otherCityId = createResolvedCity(cityService, cityRepository, new CityDTO("Other Town", "Stub Region", "Stubland"));
+        assertEquals(HttpStatus.OK, restTemplate.getForEntity("/weather/current/{cityId}", String.class, cachedCityId).getStatusCode());
+
+        stub.withErrors(1.0, 503);
+        HttpStatus status = HttpStatus.OK;
+        for (int i = 0; i < 10 && status != HttpStatus.SERVICE_UNAVAILABLE; i++) {
+            status = HttpStatus.valueOf(restTemplate.getForEntity("/weather/current/{cityId}", String.class, otherCityId).getStatusCode().value());
+        }
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, status);
+        assertEquals(1.0, meterRegistry.get("weather.api.circuit.state").tag("endpoint", "current").gauge().value());
+
+        //Requests are not sent while the circuit is open, cached weather is returned even though it is expired
+        stub.withErrors(0, 500).resetRequestCounts();
+        double usedBefore = meterRegistry.get("weather.api.quota.used").gauge().value();
+        double tokensBefore = meterRegistry.get("weather.api.rate-limit.available").tag("endpoint", "current").gauge().value();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE,
+                restTemplate.getForEntity("/weather/current/{cityId}", String.class, otherCityId).getStatusCode());
+        //Calls rejected by the breaker are not counted against the call limits
+        assertEquals(usedBefore, meterRegistry.get("weather.api.quota.used").gauge().value());
+        assertTrue(meterRegistry.get("weather.api.rate-limit.available").tag("endpoint", "current").gauge().value() >= tokensBefore);
+        ResponseEntity<String> cached = restTemplate.getForEntity("/weather/current/{cityId}", String.class, cachedCityId);
+        assertEquals(HttpStatus.OK, cached.getStatusCode());
+        assertEquals("Cached Town", new ObjectMapper().readTree(cached.getBody()).get("location").get("name").asText());
+        assertEquals(0, stub.getRequestCount("/current.json"));
+    }
+}
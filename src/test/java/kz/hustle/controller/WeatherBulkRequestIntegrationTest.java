@@ -0,0 +1,81 @@
+package kz.hustle.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kz.hustle.dto.CityDTO;
+import kz.hustle.service.CityService;
+import kz.hustle.stub.WeatherApiStubServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Current weather requests grouped into Weather API bulk requests, against the local Weather API stub.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class WeatherBulkRequestIntegrationTest {
+
+    private static WeatherApiStubServer stub;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private CityService cityService;
+
+    @DynamicPropertySource
+    static void weatherApiProperties(DynamicPropertyRegistry registry) throws IOException {
+        stub = WeatherApiStubServer.start(0);
+        registry.add("weatherapi.base-url", stub::getBaseUrl);
+        registry.add("weatherapi.key", () -> "stub-key");
+        registry.add("weatherapi.bulk.enabled", () -> "true");
+        registry.add("weatherapi.bulk.window", () -> "200ms");
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:weather-bulk");
+        registry.add("spring.jpa.properties.hibernate.cache.region_prefix", () -> "weather-bulk");
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    public void testBatchIsSentAsOneBulkRequest() throws JsonProcessingException {
+        List<Long> cityIds = new ArrayList<>();
+        cityIds.add(cityService.createCity(new CityDTO("Almaty", "Almaty City", "Kazakhstan")).getCityId());
+        for (int i = 1; i <= 4; i++) {
+            cityIds.add(cityService.createCity(new CityDTO("Bulk Town " + i, "Stub Region", "Stubland")).getCityId());
+        }
+        stub.resetRequestCounts();
+
+        ResponseEntity<String> response = restTemplate.postForEntity("/weather/current/batch", cityIds, String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        JsonNode result = new ObjectMapper().readTree(response.getBody());
+        assertEquals("Almaty", result.get(cityIds.get(0).toString()).get("location").get("name").asText());
+        for (int i = 1; i <= 4; i++) {
+            JsonNode weather = result.get(cityIds.get(i).toString());
+            assertEquals("Bulk Town " + i, weather.get("location").get("name").asText());
+            assertTrue(weather.has("current"));
+        }
+        assertEquals(1, stub.getRequestCount("/current.json"));
+
+        //Responses of the bulk request are cached per location
+        restTemplate.getForEntity("/weather/current/{cityId}", String.class, cityIds.get(2));
+        assertEquals(1, stub.getRequestCount("/current.json"));
+    }
+}
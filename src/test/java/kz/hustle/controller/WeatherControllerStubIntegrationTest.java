@@ -0,0 +1,378 @@
+package kz.hustle.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kz.hustle.dto.CityDTO;
+import kz.hustle.entity.City;
+import kz.hustle.repository.CityRepository;
+import kz.hustle.service.CityService;
+import kz.hustle.service.WeatherService;
+import kz.hustle.stub.WeatherApiStubServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static kz.hustle.controller.CityTestSupport.createResolvedCity;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Same scenarios as {@link WeatherControllerIntegrationTest}, but against the local Weather API stub,
+ * so they run without network access and API key.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class WeatherControllerStubIntegrationTest {
+
+    private static WeatherApiStubServer stub;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private CityService cityService;
+
+    @Autowired
+    private CityRepository cityRepository;
+
+    @Autowired
+    private WeatherService weatherService;
+
+    @DynamicPropertySource
+    static void weatherApiProperties(DynamicPropertyRegistry registry) throws IOException {
+        stub = WeatherApiStubServer.start(0);
+        registry.add("weatherapi.base-url", stub::getBaseUrl);
+        registry.add("weatherapi.key", () -> "stub-key");
+        registry.add("weatherapi.resolve-on-create", () -> "true");
+        registry.add("weatherapi.batch.max-concurrency", () -> "1");
+        registry.add("weatherapi.batch.deadline", () -> "1500ms");
+        registry.add("weatherapi.search.max-concurrency", () -> "1");
+        registry.add("weatherapi.search.deadline", () -> "700ms");
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:weather-stub");
+        //Cache manager is shared by all application contexts of the test JVM, cached rows of the other database must not be seen
+        registry.add("spring.jpa.properties.hibernate.cache.region_prefix", () -> "weather-stub");
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @AfterEach
+    void resetStub() {
+        stub.withErrors(0, 500).withLatency(Duration.ZERO, Duration.ZERO).truncateNext(0).resetRequestCounts();
+    }
+
+    @Test
+    public void testGetCurrentWeatherByCityId() throws JsonProcessingException {
+        Long cityId = cityService.createCity(new CityDTO("Almaty", "Almaty City", "Kazakhstan")).getCityId();
+        ResponseEntity<String> response = restTemplate.getForEntity("/weather/current/{cityId}", String.class, cityId);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        JsonNode result = new ObjectMapper().readTree(response.getBody());
+        assertTrue(result.has("current"));
+        assertEquals("Almaty", result.get("location").get("name").asText());
+    }
+
+    @Test
+    public void testWeatherByCityIdMakesSingleUpstreamCall() throws InterruptedException {
+        Long cityId = createResolvedCity(cityService, cityRepository, new CityDTO("Stub Town", "Stub Region", "Stubland"));
+        stub.resetRequestCounts();
+        for (int i = 0; i < 3; i++) {
+            ResponseEntity<String> response = restTemplate.getForEntity("/weather/current/{cityId}", String.class, cityId);
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+        }
+        //Location id is stored when the city is created, current weather is cached after the first request
+        assertEquals(0, stub.getRequestCount("/search.json"));
+        assertEquals(1, stub.getRequestCount("/current.json"));
+    }
+
+    @Test
+    public void testLocationIdOfRenamedCityIsNotStored() throws InterruptedException {
+        //Search of the created city is answered after the city is renamed
+        stub.withLatency(Duration.ofMillis(500), Duration.ZERO);
+        Long cityId = cityService.createCity(new CityDTO("Renamed Town", "Stub Region", "Stubland")).getCityId();
+        City city = cityRepository.findAllWithRegionAndCountryByIdIn(List.of(cityId)).get(0);
+        CompletableFuture<Integer> resolved = weatherService.resolveWeatherApiCityIdAsync(city);
+        assertFalse(resolved.isDone());
+        cityService.updateCity(cityId, new CityDTO("Moved Town", null, null));
+
+        assertNotNull(resolved.join());
+        //Search started when the city was created is stored on the same executor
+        Thread.sleep(200);
+        City renamed = cityRepository.findById(cityId).orElseThrow();
+        assertEquals("Moved Town", renamed.getName());
+        assertNull(renamed.getWeatherApiId());
+    }
+
+    @Test
+    public void testGetCurrentWeatherBatch() throws JsonProcessingException {
+        Long almatyId = cityService.createCity(new CityDTO("Almaty", "Almaty City", "Kazakhstan")).getCityId();
+        Long townId = cityService.createCity(new CityDTO("Batch Town", "Stub Region", "Stubland")).getCityId();
+        restTemplate.getForEntity("/weather/current/{cityId}", String.class, almatyId);
+        stub.resetRequestCounts();
+
+        ResponseEntity<String> response = restTemplate.postForEntity("/weather/current/batch",
+                List.of(almatyId, townId, -1L), String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        JsonNode result = new ObjectMapper().readTree(response.getBody());
+        assertEquals(3, result.size());
+        assertEquals("Almaty", result.get(almatyId.toString()).get("location").get("name").asText());
+        assertEquals("Batch Town", result.get(townId.toString()).get("location").get("name").asText());
+        assertTrue(result.get("-1").has("error"));
+        //Almaty is served from the cache
+        assertEquals(1, stub.getRequestCount("/current.json"));
+    }
+
+    @Test
+    public void testBatchDeadlineIncludesWaitingTime() throws Exception {
+        List<Long> cityIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            cityIds.add(createResolvedCity(cityService, cityRepository, new CityDTO("Deadline Town " + i, "Stub Region", "Stubland")));
+        }
+        //One request at a time: the first city gets its weather, the second does not finish and the third does not start
+        //within the deadline
+        stub.withLatency(Duration.ofSeconds(1), Duration.ZERO).resetRequestCounts();
+        long start = System.nanoTime();
+        ResponseEntity<String> response = restTemplate.postForEntity("/weather/current/batch", cityIds, String.class);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        JsonNode result = new ObjectMapper().readTree(response.getBody());
+        assertEquals("Deadline Town 1", result.get(cityIds.get(0).toString()).get("location").get("name").asText());
+        assertTrue(result.get(cityIds.get(1).toString()).has("error"));
+        assertTrue(result.get(cityIds.get(2).toString()).has("error"));
+        assertTrue(elapsedMillis < 2500, "Batch took " + elapsedMillis + " ms");
+        assertEquals(2, stub.getRequestCount("/current.json"));
+    }
+
+    @Test
+    public void testGetCurrentWeatherBatchReportsErrorsPerCity() throws JsonProcessingException {
+        Long townId = cityService.createCity(new CityDTO("Failing Town", "Stub Region", "Stubland")).getCityId();
+        stub.withErrors(1.0, 500);
+        ResponseEntity<String> response = restTemplate.postForEntity("/weather/current/batch",
+                List.of(townId, -1L), String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        JsonNode result = new ObjectMapper().readTree(response.getBody());
+        assertTrue(result.get(townId.toString()).has("error"));
+        assertTrue(result.get("-1").has("error"));
+    }
+
+    @Test
+    public void testGetCurrentWeatherForCitySearch() throws JsonProcessingException {
+        ResponseEntity<String> response = restTemplate.getForEntity("/weather/current?city=Hyderabad", String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        JsonNode resultArray = new ObjectMapper().readTree(response.getBody());
+        assertEquals(2, resultArray.size());
+        assertEquals("India", resultArray.get(0).get("location").get("country").asText());
+        assertEquals("Pakistan", resultArray.get(1).get("location").get("country").asText());
+    }
+
+    @Test
+    public void testGetCurrentWeatherForCitySearchWithCountry() throws JsonProcessingException {
+        ResponseEntity<String> response = restTemplate.getForEntity("/weather/current?city=Hyderabad&country=Pakistan", String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        JsonNode resultArray = new ObjectMapper().readTree(response.getBody());
+        assertEquals(1, resultArray.size());
+        assertEquals("Sindh", resultArray.get(0).get("location").get("region").asText());
+    }
+
+    @Test
+    public void testConcurrentIdenticalRequestsShareUpstreamCalls() throws Exception {
+        stub.withLatency(Duration.ofMillis(300), Duration.ZERO);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<ResponseEntity<String>>> responses = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                responses.add(clients.submit(() -> restTemplate.getForEntity("/weather/current?city={city}", String.class, "Shared Town")));
+            }
+            for (Future<ResponseEntity<String>> response : responses) {
+                assertEquals(HttpStatus.OK, response.get().getStatusCode());
+                assertEquals("Shared Town", new ObjectMapper().readTree(response.get().getBody()).get(0).get("location").get("name").asText());
+            }
+        } finally {
+            clients.shutdown();
+        }
+        assertEquals(1, stub.getRequestCount("/search.json"));
+        assertEquals(1, stub.getRequestCount("/current.json"));
+    }
+
+    @Test
+    public void testQueuedSearchLocationsAreNotRequestedAfterDeadline() throws InterruptedException {
+        //Three locations are found, one request at a time: the first does not finish within the deadline
+        stub.withLatency(Duration.ofSeconds(1), Duration.ZERO);
+        ResponseEntity<String> response = restTemplate.getForEntity("/weather/current?city={city}", String.class, "Queued Town");
+        assertEquals(HttpStatus.REQUEST_TIMEOUT, response.getStatusCode());
+
+        //The first request finishes after the client has timed out, the other locations are not requested
+        Thread.sleep(1500);
+        assertEquals(1, stub.getRequestCount("/current.json"));
+    }
+
+    @Test
+    public void testCitySearchIsAnsweredFromGazetteer() throws JsonProcessingException {
+        restTemplate.getForEntity("/weather/current?city=Hyderabad", String.class);
+        stub.resetRequestCounts();
+        ResponseEntity<String> response = restTemplate.getForEntity("/weather/current?city=hyderabad&country=India", String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        JsonNode resultArray = new ObjectMapper().readTree(response.getBody());
+        assertEquals(1, resultArray.size());
+        assertEquals("India", resultArray.get(0).get("location").get("country").asText());
+        assertEquals(0, stub.getRequestCount("/search.json"));
+    }
+
+    @Test
+    public void testEmptySearchResultIsNotStored() {
+        restTemplate.getForEntity("/weather/current?city=Atlantis", String.class);
+        restTemplate.getForEntity("/weather/current?city=Atlantis", String.class);
+        assertEquals(2, stub.getRequestCount("/search.json"));
+    }
+
+    @Test
+    public void testLocationIdIsResolvedFromGazetteer() throws InterruptedException {
+        Long cityId = createResolvedCity(cityService, cityRepository, new CityDTO("Gazetteer Town", "Stub Region", "Stubland"));
+        cityService.deleteCity(cityId);
+        stub.resetRequestCounts();
+        cityId = createResolvedCity(cityService, cityRepository, new CityDTO("Gazetteer Town", "Stub Region", "Stubland"));
+        ResponseEntity<String> response = restTemplate.getForEntity("/weather/current/{cityId}", String.class, cityId);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(0, stub.getRequestCount("/search.json"));
+    }
+
+    @Test
+    public void getWeatherForecastByCityId() throws JsonProcessingException {
+        Long cityId = cityService.createCity(new CityDTO("Forecast Town", "Stub Region", "Stubland")).getCityId();
+        ResponseEntity<String> response = restTemplate.getForEntity("/weather/forecast?cid={cityId}&days=3", String.class, cityId);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        JsonNode result = new ObjectMapper().readTree(response.getBody());
+        assertEquals(3, result.get("forecast").get("forecastday").size());
+    }
+
+    @Test
+    public void testShorterForecastsAreTakenFromCachedForecast() throws JsonProcessingException {
+        Long cityId = cityService.createCity(new CityDTO("Forecast Cache Town", "Stub Region", "Stubland")).getCityId();
+        stub.resetRequestCounts();
+        assertEquals(1, forecastDays(cityId, 1));
+        assertEquals(3, forecastDays(cityId, 3));
+        assertEquals(2, forecastDays(cityId, 2));
+        assertEquals(1, stub.getRequestCount("/forecast.json"));
+
+        //A longer forecast replaces the cached one
+        assertEquals(5, forecastDays(cityId, 5));
+        assertEquals(3, forecastDays(cityId, 3));
+        assertEquals(5, forecastDays(cityId, 5));
+        assertEquals(2, stub.getRequestCount("/forecast.json"));
+    }
+
+    private int forecastDays(Long cityId, int days) throws JsonProcessingException {
+        ResponseEntity<String> response = restTemplate.getForEntity("/weather/forecast?cid={cityId}&days={days}",
+                String.class, cityId, days);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        return new ObjectMapper().readTree(response.getBody()).get("forecast").get("forecastday").size();
+    }
+
+    @Test
+    public void testCompressedResponseIsPassedThrough() throws Exception {
+        Long cityId = cityService.createCity(new CityDTO("Gzip Town", "Stub Region", "Stubland")).getCityId();
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/weather/current/" + cityId))
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build();
+        HttpResponse<byte[]> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, response.statusCode());
+        assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            JsonNode result = new ObjectMapper().readTree(in);
+            assertTrue(result.has("current"));
+            assertEquals("Gzip Town", result.get("location").get("name").asText());
+        }
+
+        //Clients that do not accept gzip get the decompressed body of the same cached response
+        stub.resetRequestCounts();
+        request = HttpRequest.newBuilder(request.uri()).GET().build();
+        response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Encoding").isEmpty());
+        assertTrue(new ObjectMapper().readTree(response.body()).has("current"));
+        assertEquals(0, stub.getRequestCount("/current.json"));
+    }
+
+    @Test
+    public void testGzipQualityIsParsedAsNumber() throws Exception {
+        Long cityId = createResolvedCity(cityService, cityRepository, new CityDTO("Quality Town", "Stub Region", "Stubland"));
+        URI uri = URI.create("http://localhost:" + port + "/weather/current/" + cityId);
+        assertEquals("gzip", contentEncoding(uri, "gzip;q=0.5"));
+        assertEquals("gzip", contentEncoding(uri, "deflate, GZIP ; Q=1.000"));
+        assertNull(contentEncoding(uri, "gzip;q=0"));
+        assertNull(contentEncoding(uri, "gzip;q=0.0"));
+        assertNull(contentEncoding(uri, "br, gzip; q=0.000"));
+    }
+
+    private String contentEncoding(URI uri, String acceptEncoding) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri).header("Accept-Encoding", acceptEncoding).GET().build();
+        HttpResponse<byte[]> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, response.statusCode());
+        return response.headers().firstValue("Content-Encoding").orElse(null);
+    }
+
+    @Test
+    public void testForbiddenIsMappedTo403() {
+        stub.withErrors(1.0, 403);
+        ResponseEntity<String> response = restTemplate.getForEntity("/weather/current?city=Nowhere", String.class);
+        assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
+    }
+
+    @Test
+    public void testWeatherApiErrorsOfCityWeatherAreMappedToStatus() throws InterruptedException {
+        Long cityId = createResolvedCity(cityService, cityRepository, new CityDTO("Error Town", "Stub Region", "Stubland"));
+        Map<Integer, HttpStatus> expected = Map.of(
+                401, HttpStatus.UNAUTHORIZED,
+                403, HttpStatus.FORBIDDEN,
+                408, HttpStatus.REQUEST_TIMEOUT);
+        for (Map.Entry<Integer, HttpStatus> status : expected.entrySet()) {
+            stub.withErrors(1.0, status.getKey());
+            assertEquals(status.getValue(),
+                    restTemplate.getForEntity("/weather/current/{cityId}", String.class, cityId).getStatusCode());
+            assertEquals(status.getValue(),
+                    restTemplate.getForEntity("/weather/forecast?cid={cityId}&days=1", String.class, cityId).getStatusCode());
+        }
+    }
+
+    @Test
+    public void testMalformedWeatherApiResponseIsMappedTo500() {
+        stub.truncateNext(1);
+        ResponseEntity<String> response = restTemplate.getForEntity("/weather/current?city={city}", String.class, "Truncated Town");
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+        assertTrue(response.getBody().startsWith("An unexpected error occurred"));
+    }
+}
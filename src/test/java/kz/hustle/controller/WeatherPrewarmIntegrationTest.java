@@ -0,0 +1,89 @@
+package kz.hustle.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import kz.hustle.dto.CityDTO;
+import kz.hustle.service.CityService;
+import kz.hustle.stub.WeatherApiStubServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pre-warming of cached weather for the most requested cities, against the local Weather API stub.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class WeatherPrewarmIntegrationTest {
+
+    private static WeatherApiStubServer stub;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private CityService cityService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @DynamicPropertySource
+    static void weatherApiProperties(DynamicPropertyRegistry registry) throws IOException {
+        stub = WeatherApiStubServer.start(0);
+        registry.add("weatherapi.base-url", stub::getBaseUrl);
+        registry.add("weatherapi.key", () -> "stub-key");
+        //Entries expire within the lead right after they are loaded, so every run of the pre-warmer refreshes them
+        registry.add("weatherapi.cache.current.ttl", () -> "1s");
+        registry.add("weatherapi.cache.forecast.ttl", () -> "1s");
+        registry.add("weatherapi.prewarm.enabled", () -> "true");
+        registry.add("weatherapi.prewarm.interval", () -> "200ms");
+        registry.add("weatherapi.prewarm.lead", () -> "900ms");
+        registry.add("weatherapi.prewarm.budget-share", () -> "0.5");
+        registry.add("weatherapi.rate-limit.current.per-minute", () -> "6000");
+        registry.add("weatherapi.rate-limit.forecast.per-minute", () -> "6000");
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:weather-prewarm");
+        registry.add("spring.jpa.properties.hibernate.cache.region_prefix", () -> "weather-prewarm");
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stub.close();
+    }
+
+    @Test
+    public void testRequestedCitiesAreRefreshedInBackground() throws InterruptedException {
+        Long cityId = cityService.createCity(new CityDTO("Hot Town", "Stub Region", "Stubland")).getCityId();
+        stub.resetRequestCounts();
+        for (int i = 0; i < 4; i++) {
+            assertEquals(HttpStatus.OK, restTemplate.getForEntity("/weather/current/{cityId}", String.class, cityId).getStatusCode());
+            assertEquals(HttpStatus.OK, restTemplate.getForEntity("/weather/forecast?cid={cityId}&days=3", String.class, cityId).getStatusCode());
+        }
+
+        //The pre-warmer loads the entries again before they expire, without client requests
+        long deadline = System.currentTimeMillis() + 5000;
+        //Waits for the refreshes too, not only for the stub counts: in a slow run client requests alone may load
+        //an expired entry twice
+        while ((refreshes("current") < 1 || refreshes("forecast") < 1
+                || stub.getRequestCount("/current.json") < 2 || stub.getRequestCount("/forecast.json") < 2)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(refreshes("current") >= 1);
+        assertTrue(refreshes("forecast") >= 1);
+        assertTrue(stub.getRequestCount("/current.json") >= 2);
+        assertTrue(stub.getRequestCount("/forecast.json") >= 2);
+    }
+
+    private double refreshes(String endpoint) {
+        return meterRegistry.get("weather.prewarm.refreshes").tag("endpoint", endpoint).counter().count();
+    }
+}
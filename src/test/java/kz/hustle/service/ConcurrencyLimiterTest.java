@@ -0,0 +1,74 @@
+package kz.hustle.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void testTasksOverLimitStartInSubmissionOrder() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2);
+        List<Integer> started = new ArrayList<>();
+        List<CompletableFuture<Integer>> tasks = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int task = i;
+            tasks.add(new CompletableFuture<>());
+            results.add(limiter.submit(() -> {
+                started.add(task);
+                return tasks.get(task);
+            }));
+        }
+        assertEquals(List.of(0, 1), started);
+
+        tasks.get(1).complete(1);
+        assertEquals(List.of(0, 1, 2), started);
+        assertEquals(1, results.get(1).join());
+        tasks.get(0).completeExceptionally(new IllegalStateException("Failed"));
+        assertEquals(List.of(0, 1, 2, 3), started);
+        assertTrue(results.get(0).isCompletedExceptionally());
+        tasks.get(2).complete(2);
+        tasks.get(3).complete(3);
+        tasks.get(4).complete(4);
+        assertEquals(List.of(0, 1, 2, 3, 4), started);
+        for (int i = 1; i < 5; i++) {
+            assertEquals(i, results.get(i).join());
+        }
+    }
+
+    @Test
+    public void testSupplierFailureReleasesSlot() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+        CompletableFuture<String> failed = limiter.submit(() -> {
+            throw new IllegalStateException("Failed");
+        });
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals("next", limiter.submit(() -> CompletableFuture.completedFuture("next")).join());
+    }
+
+    @Test
+    public void testLongQueueOfCompletedTasksDoesNotOverflowStack() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        limiter.submit(() -> first);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            int value = i;
+            //E.g. cached responses: the task completes before submit returns
+            results.add(limiter.submit(() -> CompletableFuture.completedFuture(value)));
+        }
+        assertFalse(results.get(0).isDone());
+
+        //All queued tasks are started and completed by the thread completing the first one
+        first.complete(-1);
+        for (int i = 0; i < results.size(); i++) {
+            assertTrue(results.get(i).isDone());
+            assertEquals(i, results.get(i).join());
+        }
+    }
+}
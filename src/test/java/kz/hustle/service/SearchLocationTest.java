@@ -0,0 +1,71 @@
+package kz.hustle.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.JsonEOFException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchLocationTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testReadList() throws IOException {
+        List<SearchLocation> locations = readList("""
+                [{"id":2801268,"name":"London","region":"City of London, Greater London","country":"United Kingdom",
+                  "lat":51.52,"lon":-0.11,"url":"london-city-of-london-greater-london-united-kingdom"},
+                 {"id":315398,"name":"London","region":"Ontario","country":"Canada","lat":42.98,"lon":-81.25}]""");
+        assertEquals(List.of(
+                new SearchLocation(2801268, "London", "City of London, Greater London", "United Kingdom", 51.52, -0.11),
+                new SearchLocation(315398, "London", "Ontario", "Canada", 42.98, -81.25)), locations);
+    }
+
+    @Test
+    public void testEmptyList() throws IOException {
+        assertEquals(List.of(), readList("[]"));
+    }
+
+    @Test
+    public void testErrorResponseIsRejected() {
+        assertThrows(MismatchedInputException.class,
+                () -> readList("{\"error\":{\"code\":1006,\"message\":\"No matching location found.\"}}"));
+    }
+
+    @Test
+    public void testNestedFieldsAreSkipped() throws IOException {
+        List<SearchLocation> locations = readList("""
+                [{"id":1,"tz":{"id":2,"name":"Asia/Almaty","offsets":[5,6]},"name":"Almaty",
+                  "aliases":[{"name":"Alma-Ata"},["Verny"]],"region":"Almaty City","country":"Kazakhstan"}]""");
+        assertEquals(List.of(new SearchLocation(1, "Almaty", "Almaty City", "Kazakhstan", 0, 0)), locations);
+    }
+
+    @Test
+    public void testNullAndMissingFields() throws IOException {
+        List<SearchLocation> locations = readList("[{\"id\":null,\"name\":\"Almaty\",\"region\":null}]");
+        assertEquals(List.of(new SearchLocation(null, "Almaty", "", "", 0, 0)), locations);
+    }
+
+    @Test
+    public void testItemThatIsNotLocationIsRejected() {
+        assertThrows(MismatchedInputException.class, () -> readList("[{\"id\":1,\"name\":\"Almaty\"},2]"));
+    }
+
+    @Test
+    public void testTruncatedListIsRejected() {
+        assertThrows(JsonEOFException.class, () -> readList("[{\"id\":1,\"name\":\"Almaty\"}"));
+        assertThrows(JsonEOFException.class, () -> readList("[{\"id\":1,\"name\":\"Alm"));
+        assertThrows(JsonEOFException.class, () -> readList("[{\"id\":1,\"tz\":{\"name\":"));
+    }
+
+    private List<SearchLocation> readList(String json) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(json)) {
+            return SearchLocation.readList(parser);
+        }
+    }
+}
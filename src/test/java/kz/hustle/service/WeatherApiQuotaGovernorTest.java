@@ -0,0 +1,50 @@
+package kz.hustle.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WeatherApiQuotaGovernorTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void testMonthlyRejectionKeepsPerMinuteTokens() {
+        WeatherApiQuotaGovernor governor = new WeatherApiQuotaGovernor(10, 10, 10, Duration.ZERO, 2, meterRegistry);
+        assertDoesNotThrow(() -> governor.acquire("current", 2).join());
+        double tokens = available("current");
+
+        CompletableFuture<Void> rejected = governor.acquire("current", 1);
+        CompletionException e = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(WeatherAPIQuotaExceededException.class, e.getCause());
+        assertTrue(available("current") >= tokens);
+        assertEquals(2, governor.getUsedThisMonth());
+    }
+
+    @Test
+    public void testPerMinuteRejectionIsNotCountedMonthly() {
+        WeatherApiQuotaGovernor governor = new WeatherApiQuotaGovernor(1, 1, 1, Duration.ZERO, 100, meterRegistry);
+        governor.acquire("search", 1).join();
+        assertThrows(CompletionException.class, () -> governor.acquire("search", 1).join());
+        assertEquals(1, governor.getUsedThisMonth());
+    }
+
+    @Test
+    public void testUnlimitedMonthlyQuotaGauges() {
+        WeatherApiQuotaGovernor governor = new WeatherApiQuotaGovernor(10, 10, 10, Duration.ZERO, 0, meterRegistry);
+        governor.acquire("forecast", 3).join();
+        assertEquals(3, governor.getUsedThisMonth());
+        assertTrue(Double.isNaN(meterRegistry.get("weather.api.quota.remaining").gauge().value()));
+        assertTrue(Double.isNaN(meterRegistry.get("weather.api.quota.exhaustion").gauge().value()));
+    }
+
+    private double available(String endpoint) {
+        return meterRegistry.get("weather.api.rate-limit.available").tag("endpoint", endpoint).gauge().value();
+    }
+}
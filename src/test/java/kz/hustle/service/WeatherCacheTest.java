@@ -0,0 +1,133 @@
+package kz.hustle.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WeatherCacheTest {
+
+    private static final Duration HOUR = Duration.ofHours(1);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    //Futures returned by the loader, in the order of the calls
+    private final List<CompletableFuture<String>> loads = new ArrayList<>();
+    private final Function<Integer, CompletableFuture<String>> loader = key -> {
+        CompletableFuture<String> load = new CompletableFuture<>();
+        loads.add(load);
+        return load;
+    };
+
+    @Test
+    public void testHitAndMiss() {
+        WeatherCache<Integer, String> cache = cache(HOUR, HOUR, HOUR);
+        CompletableFuture<String> first = cache.get(1, loader);
+        assertFalse(first.isDone());
+        loads.get(0).complete("sunny");
+        assertEquals("sunny", first.join());
+
+        assertEquals("sunny", cache.get(1, loader).join());
+        assertEquals("sunny", cache.get(1, loader).join());
+        assertEquals(1, loads.size());
+        assertEquals(1, requests("miss"));
+        assertEquals(2, requests("hit"));
+        assertEquals(0, requests("stale"));
+    }
+
+    @Test
+    public void testErrorResponseIsNotCached() {
+        WeatherCache<Integer, String> cache = cache(HOUR, HOUR, HOUR);
+        CompletableFuture<String> first = cache.get(1, loader);
+        loads.get(0).complete("error");
+        assertEquals("error", first.join());
+
+        cache.get(1, loader);
+        assertEquals(2, loads.size());
+        assertEquals(2, requests("miss"));
+    }
+
+    @Test
+    public void testStaleEntryIsRefreshedOnce() {
+        //Every entry is older than TTL right after it is loaded and stays within the grace period
+        WeatherCache<Integer, String> cache = cache(Duration.ZERO, HOUR, Duration.ZERO);
+        CompletableFuture<String> first = cache.get(1, loader);
+        loads.get(0).complete("sunny");
+        assertEquals("sunny", first.join());
+
+        //Stale value is returned right away, one refresh is started for all callers
+        for (int i = 0; i < 3; i++) {
+            CompletableFuture<String> stale = cache.get(1, loader);
+            assertTrue(stale.isDone());
+            assertEquals("sunny", stale.join());
+        }
+        assertEquals(2, loads.size());
+        assertEquals(3, requests("stale"));
+        assertFalse(cache.refresh(1, loader));
+
+        loads.get(1).complete("rainy");
+        assertEquals("rainy", cache.get(1, loader).join());
+        //The refresh is finished, the next stale hit starts a new one
+        assertEquals(3, loads.size());
+        assertEquals(1, requests("miss"));
+        assertEquals(0, requests("hit"));
+    }
+
+    @Test
+    public void testFailedRefreshKeepsStaleEntry() {
+        WeatherCache<Integer, String> cache = cache(Duration.ZERO, HOUR, Duration.ZERO);
+        cache.get(1, loader);
+        loads.get(0).complete("sunny");
+
+        cache.get(1, loader);
+        loads.get(1).completeExceptionally(new IOException("Connection reset"));
+        assertEquals("sunny", cache.get(1, loader).join());
+        assertEquals(3, loads.size());
+    }
+
+    @Test
+    public void testStaleEntryIsReturnedOnError() {
+        //Entries are past TTL and grace right after they are loaded, but within staleIfError
+        WeatherCache<Integer, String> cache = cache(Duration.ZERO, Duration.ZERO, HOUR);
+        cache.get(1, loader);
+        loads.get(0).complete("sunny");
+
+        CompletableFuture<String> failed = cache.get(1, loader);
+        loads.get(1).completeExceptionally(new IOException("Connection reset"));
+        assertEquals("sunny", failed.join());
+
+        CompletableFuture<String> error = cache.get(1, loader);
+        loads.get(2).complete("error");
+        assertEquals("sunny", error.join());
+
+        CompletableFuture<String> loaded = cache.get(1, loader);
+        loads.get(3).complete("rainy");
+        assertEquals("rainy", loaded.join());
+        assertEquals(4, requests("miss"));
+        assertEquals(2, requests("stale-on-error"));
+    }
+
+    @Test
+    public void testMissWithoutEntryFails() {
+        WeatherCache<Integer, String> cache = cache(HOUR, HOUR, HOUR);
+        CompletableFuture<String> failed = cache.get(1, loader);
+        loads.get(0).completeExceptionally(new IOException("Connection reset"));
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals(0, requests("stale-on-error"));
+    }
+
+    private WeatherCache<Integer, String> cache(Duration ttl, Duration grace, Duration staleIfError) {
+        return new WeatherCache<>("weather-test", ttl, grace, staleIfError, 100, value -> !value.equals("error"), meterRegistry);
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("weather.cache.requests").tag("cache", "weather-test").tag("result", result).counter().count();
+    }
+}
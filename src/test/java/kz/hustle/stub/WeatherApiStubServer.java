@@ -0,0 +1,347 @@
+package kz.hustle.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for https://api.weatherapi.com, used by integration and load tests.
+ * Replays payloads from the weatherapi folder in test resources:
+ * - /search.json?q=name - search/{name}.json (lower case, spaces replaced with '-');
+ * - /current.json?q=id:N - current/N.json;
+ * - POST /current.json?q=bulk - bulk request, {"locations": [{"q": "id:N", "custom_id": "..."}]};
+ * - /forecast.json?q=id:N&amp;days=D - forecast/N.json, trimmed to D days.
+ * Unknown names get a synthetic location from search, and synthetic locations get the Almaty payloads with the location
+ * name replaced, so any number of cities can be used in load tests.
+ * Latency and error responses can be configured to simulate slow or failing Weather API.
+ */
+public class WeatherApiStubServer implements AutoCloseable {
+
+    private static final String PAYLOADS = "/weatherapi/";
+    private static final int TEMPLATE_LOCATION_ID = 2766380;
+    private static final int SYNTHETIC_ID_BASE = 10_000_000;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ConcurrentMap<String, Optional<JsonNode>> payloads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, String> syntheticLocations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+    private volatile Duration latency = Duration.ZERO;
+    private volatile Duration latencyJitter = Duration.ZERO;
+    private volatile double errorRate;
+    private volatile int errorStatus = 500;
+    private final AtomicInteger failNext = new AtomicInteger();
+    private volatile int failNextStatus = 500;
+    private final AtomicInteger truncateNext = new AtomicInteger();
+
+    private WeatherApiStubServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts the stub on the loopback interface.
+     *
+     * @param port port to listen on, 0 for any free port
+     */
+    public static WeatherApiStubServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        //Simulated latency blocks the handling thread, so threads are not pooled to a fixed size
+        ExecutorService executor = Executors.newCachedThreadPool();
+        WeatherApiStubServer stub = new WeatherApiStubServer(server, executor);
+        server.createContext("/v1/", stub::handle);
+        server.setExecutor(executor);
+        server.start();
+        return stub;
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/v1";
+    }
+
+    public WeatherApiStubServer withLatency(Duration latency, Duration jitter) {
+        this.latency = latency;
+        this.latencyJitter = jitter;
+        return this;
+    }
+
+    /**
+     * Makes the given share of requests fail with the given HTTP status.
+     */
+    public WeatherApiStubServer withErrors(double errorRate, int errorStatus) {
+        this.errorRate = errorRate;
+        this.errorStatus = errorStatus;
+        return this;
+    }
+
+    /**
+     * Makes the next count requests fail with the given HTTP status.
+     */
+    public WeatherApiStubServer failNext(int count, int status) {
+        this.failNextStatus = status;
+        this.failNext.set(count);
+        return this;
+    }
+
+    /**
+     * Cuts the bodies of the next count successful responses in half, so they are not valid JSON.
+     */
+    public WeatherApiStubServer truncateNext(int count) {
+        this.truncateNext.set(count);
+        return this;
+    }
+
+    /**
+     * @param endpoint endpoint path, e.g. "/current.json"
+     * @return number of requests received by the endpoint
+     */
+    public long getRequestCount(String endpoint) {
+        LongAdder count = requestCounts.get(endpoint);
+        return count == null ? 0 : count.sum();
+    }
+
+    public void resetRequestCounts() {
+        requestCounts.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String endpoint = exchange.getRequestURI().getPath().substring("/v1".length());
+            requestCounts.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            simulateLatency();
+            if (failNext.getAndUpdate(count -> Math.max(count - 1, 0)) > 0) {
+                respondError(exchange, failNextStatus, 9999, "Injected error.");
+                return;
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                respondError(exchange, errorStatus, 9999, "Injected error.");
+                return;
+            }
+            String key = params.get("key");
+            if (key == null || key.isBlank()) {
+                respondError(exchange, 401, 1002, "API key is invalid or not provided.");
+                return;
+            }
+            switch (endpoint) {
+                case "/search.json" -> respond(exchange, 200, search(params.getOrDefault("q", "")));
+                case "/current.json" -> {
+                    if ("bulk".equals(params.get("q"))) {
+                        respond(exchange, 200, bulkCurrent(exchange.getRequestBody()));
+                    } else {
+                        respondWithLocation(exchange, "current", params.get("q"), -1);
+                    }
+                }
+                case "/forecast.json" -> respondWithLocation(exchange, "forecast", params.get("q"),
+                        Integer.parseInt(params.getOrDefault("days", "1")));
+                default -> respondError(exchange, 400, 1005, "API request url is invalid.");
+            }
+        } catch (RuntimeException e) {
+            respondError(exchange, 500, 9999, "Stub failure: " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private JsonNode search(String query) {
+        String name = query.trim();
+        Optional<JsonNode> recorded = payload("search/" + name.toLowerCase(Locale.ROOT).replace(' ', '-'));
+        if (recorded.isPresent()) {
+            return recorded.get();
+        }
+        ArrayNode result = objectMapper.createArrayNode();
+        if (name.isEmpty()) {
+            return result;
+        }
+        int id = SYNTHETIC_ID_BASE + Math.floorMod(name.toLowerCase(Locale.ROOT).hashCode(), SYNTHETIC_ID_BASE);
+        syntheticLocations.put(id, name);
+        result.addObject()
+                .put("id", id)
+                .put("name", name)
+                .put("region", "")
+                .put("country", "Stubland")
+                .put("lat", 0.0)
+                .put("lon", 0.0)
+                .put("url", name.toLowerCase(Locale.ROOT).replace(' ', '-'));
+        return result;
+    }
+
+    private void respondWithLocation(HttpExchange exchange, String type, String query, int days) throws IOException {
+        Optional<JsonNode> payload = locationPayload(type, query, days);
+        if (payload.isEmpty()) {
+            respondError(exchange, 400, 1006, "No matching location found.");
+            return;
+        }
+        respond(exchange, 200, payload.get());
+    }
+
+    //Every location of the bulk request gets the fields of a single response, or an error, inside "query"
+    private JsonNode bulkCurrent(InputStream body) throws IOException {
+        ObjectNode result = objectMapper.createObjectNode();
+        ArrayNode bulk = result.putArray("bulk");
+        for (JsonNode location : objectMapper.readTree(body).path("locations")) {
+            ObjectNode query = bulk.addObject().putObject("query");
+            query.set("custom_id", location.get("custom_id"));
+            query.put("q", location.path("q").asText());
+            Optional<JsonNode> payload = locationPayload("current", location.path("q").asText(), -1);
+            if (payload.isPresent()) {
+                query.setAll((ObjectNode) payload.get());
+            } else {
+                query.putObject("error").put("code", 1006).put("message", "No matching location found.");
+            }
+        }
+        return result;
+    }
+
+    private Optional<JsonNode> locationPayload(String type, String query, int days) {
+        Integer id = parseLocationId(query);
+        Optional<JsonNode> payload = id == null ? Optional.empty() : payload(type + "/" + id);
+        if (payload.isEmpty() && id != null && syntheticLocations.containsKey(id)) {
+            payload = payload(type + "/" + TEMPLATE_LOCATION_ID).map(template -> {
+                ObjectNode copy = template.deepCopy();
+                ((ObjectNode) copy.get("location"))
+                        .put("name", syntheticLocations.get(id))
+                        .put("region", "")
+                        .put("country", "Stubland");
+                return copy;
+            });
+        }
+        if (payload.isEmpty() || days <= 0) {
+            return payload;
+        }
+        ObjectNode copy = payload.get().deepCopy();
+        ArrayNode forecastDays = (ArrayNode) copy.get("forecast").get("forecastday");
+        while (forecastDays.size() > days) {
+            forecastDays.remove(forecastDays.size() - 1);
+        }
+        return Optional.of(copy);
+    }
+
+    private Optional<JsonNode> payload(String name) {
+        return payloads.computeIfAbsent(name, key -> {
+            try (InputStream in = WeatherApiStubServer.class.getResourceAsStream(PAYLOADS + key + ".json")) {
+                return in == null ? Optional.empty() : Optional.of(objectMapper.readTree(in));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void simulateLatency() {
+        long delay = latency.toMillis();
+        long jitter = latencyJitter.toMillis();
+        if (jitter > 0) {
+            delay += ThreadLocalRandom.current().nextLong(-jitter, jitter + 1);
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void respondError(HttpExchange exchange, int status, int code, String message) throws IOException {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.putObject("error").put("code", code).put("message", message);
+        respond(exchange, status, body);
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        if (status < 400 && truncateNext.getAndUpdate(count -> Math.max(count - 1, 0)) > 0) {
+            bytes = Arrays.copyOf(bytes, bytes.length / 2);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        //Compressed like Weather API does when the client accepts gzip
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Integer parseLocationId(String query) {
+        if (query == null || !query.startsWith("id:")) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(query.substring(3));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Runs the stub standalone, e.g. to point a locally started application at it with
+     * weatherapi.base-url=http://localhost:8089/v1
+     * Arguments: [port] [latency ms] [jitter ms] [error rate] [error status]
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8089;
+        WeatherApiStubServer stub = start(port)
+                .withLatency(Duration.ofMillis(args.length > 1 ? Long.parseLong(args[1]) : 0),
+                        Duration.ofMillis(args.length > 2 ? Long.parseLong(args[2]) : 0))
+                .withErrors(args.length > 3 ? Double.parseDouble(args[3]) : 0.0,
+                        args.length > 4 ? Integer.parseInt(args[4]) : 500);
+        System.out.println("Weather API stub is listening on " + stub.getBaseUrl());
+    }
+}